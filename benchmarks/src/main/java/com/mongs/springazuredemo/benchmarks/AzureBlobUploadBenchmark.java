@@ -0,0 +1,98 @@
+package com.mongs.springazuredemo.benchmarks;
+
+import com.azure.core.util.BinaryData;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.mongs.springazuredemo.file.AzureBlobConfig;
+import com.mongs.springazuredemo.file.AzureBlobService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-upload latency of the parallel block upload against the previous upload followed by a
+ * separate set-headers call. Sampled, so the results carry p50/p99 next to the mean.
+ * <p>
+ * Needs Azurite and is excluded from the CI run:
+ * AZURITE_BLOB_ENDPOINT=http://127.0.0.1:10000/devstoreaccount1 java -jar target/benchmarks.jar AzureBlobUpload
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AzureBlobUploadBenchmark {
+
+    // below max-single-upload-size, then four and sixteen 4MB blocks
+    @Param({"1048576", "16777216", "67108864"})
+    public int fileSize;
+
+    private ConfigurableApplicationContext context;
+    private AzureBlobService azureBlobService;
+    private BlobContainerClient container;
+    private byte[] content;
+    private MockMultipartFile file;
+
+    @Setup
+    public void setUp() {
+        String endpoint = System.getenv("AZURITE_BLOB_ENDPOINT");
+        if (endpoint == null || endpoint.isBlank()) {
+            throw new IllegalStateException("Set AZURITE_BLOB_ENDPOINT to run the upload benchmark");
+        }
+        context = new SpringApplicationBuilder(AzureBlobConfig.class, AzureBlobService.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.cloud.azure.storage.blob.endpoint=" + endpoint,
+                        "spring.cloud.azure.storage.blob.account-name=devstoreaccount1",
+                        // the well-known Azurite development key
+                        "spring.cloud.azure.storage.blob.account-key=Eby8vdM02xNOcqFlqUwJPLlmEtlCDXJ1OUzFT50uSRZ6IFsuFq2UVErCz4I6tq/K1SZFPTOtr/KBHBeksoGMGw==",
+                        "spring.cloud.azure.storage.blob.container-name=benchmark",
+                        "logging.level.root=warn")
+                .run();
+        azureBlobService = context.getBean(AzureBlobService.class);
+        container = context.getBean(BlobServiceClient.class).getBlobContainerClient("benchmark");
+        container.createIfNotExists();
+        content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        file = new MockMultipartFile("file", "photo.png", "image/png", content);
+    }
+
+    @TearDown
+    public void tearDown() {
+        container.deleteIfExists();
+        context.close();
+    }
+
+    @Benchmark
+    public String parallelBlockUpload() {
+        return azureBlobService.uploadImage(file);
+    }
+
+    @Benchmark
+    public String uploadThenSetHeaders() {
+        BlobClient client = container.getBlobClient(UUID.randomUUID() + ".png");
+        client.upload(BinaryData.fromBytes(content), true);
+        client.setHttpHeaders(new BlobHttpHeaders().setContentType("image/png"));
+        return client.getBlobUrl();
+    }
+}
@@ -0,0 +1,95 @@
+package com.mongs.springazuredemo.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongs.springazuredemo.GlobalExceptionHandler;
+import com.mongs.springazuredemo.ResourceNotFoundException;
+import com.mongs.springazuredemo.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Error bodies built by GlobalExceptionHandler, on their own and serialized as the client receives them
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ErrorBodyBenchmark {
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+
+    private AnnotationConfigApplicationContext context;
+    private ObjectMapper objectMapper;
+    private WebRequest request;
+    private ResourceNotFoundException notFound;
+    private IllegalArgumentException badRequest;
+    private MethodArgumentNotValidException invalid;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = new AnnotationConfigApplicationContext(JacksonAutoConfiguration.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        request = new ServletWebRequest(new MockHttpServletRequest("GET", "/api/tasks/42"));
+        notFound = new ResourceNotFoundException("Task not found with id: 42");
+        badRequest = new IllegalArgumentException("limit must be between 1 and 1000");
+
+        BeanPropertyBindingResult bindingResult = new BeanPropertyBindingResult(new Task(), "task");
+        bindingResult.rejectValue("title", "NotBlank", "Title is mandatory");
+        bindingResult.rejectValue("status", "NotNull", "Status is mandatory");
+        MethodParameter parameter = new MethodParameter(
+                ErrorBodyBenchmark.class.getDeclaredMethod("createTask", Task.class), 0);
+        invalid = new MethodArgumentNotValidException(parameter, bindingResult);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> notFound() {
+        return handler.handleResourceNotFoundException(notFound, request);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> illegalArgument() {
+        return handler.handleIllegalArgumentException(badRequest, request);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> validationErrors() {
+        return handler.handleMethodArgumentNotValidException(invalid);
+    }
+
+    @Benchmark
+    public byte[] notFoundSerialized() throws Exception {
+        return objectMapper.writeValueAsBytes(handler.handleResourceNotFoundException(notFound, request).getBody());
+    }
+
+    // stands in for the controller method a validated body is bound to
+    @SuppressWarnings("unused")
+    private void createTask(Task task) {
+    }
+}
@@ -0,0 +1,59 @@
+package com.mongs.springazuredemo.benchmarks;
+
+import com.mongs.springazuredemo.file.FileRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request file name and URL handling of FileController and AzureBlobService,
+ * which both delegate to FileRules
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileRulesBenchmark {
+
+    private static final String ACCOUNT_URL = "https://mongsstorage.blob.core.windows.net";
+    private static final String CONTAINER = "images";
+
+    @Param({"3f2b8c1e-6a4d-4e5f-9b7a-1c2d3e4f5a6b.jpeg", "logo.SVG", "archive.tar.gz"})
+    public String fileName;
+
+    private String url;
+
+    @Setup
+    public void setUp() {
+        url = ACCOUNT_URL + "/" + CONTAINER + "/" + fileName;
+    }
+
+    @Benchmark
+    public String mediaTypeFromFileName() {
+        return FileRules.getMediaTypeFromFileName(fileName);
+    }
+
+    @Benchmark
+    public String blobNameFromUrl() {
+        return FileRules.getBlobNameFromUrl(ACCOUNT_URL, CONTAINER, url);
+    }
+
+    // everything GET /api/files/by-url does with the URL before touching storage
+    @Benchmark
+    public String resolveByUrl() {
+        String blobName = FileRules.getBlobNameFromUrl(ACCOUNT_URL, CONTAINER, url);
+        return blobName + FileRules.getMediaTypeFromFileName(FileRules.getFileNameFromUrl(url));
+    }
+}
@@ -0,0 +1,95 @@
+package com.mongs.springazuredemo.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files and exits with 1 when a benchmark got slower than
+ * the baseline by more than the tolerance, so a build can fail on it. A change only counts
+ * when the two 99.9% confidence intervals JMH reports (scoreConfidence) do not overlap,
+ * so noisy runs with wide intervals are reported but do not fail the build.
+ * Usage: RegressionCheck baseline.json results.json [tolerance, default 0.25]
+ */
+public final class RegressionCheck {
+
+    private RegressionCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: RegressionCheck baseline.json results.json [tolerance]");
+            System.exit(2);
+        }
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> results = read(new File(args[1]));
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.25;
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> result : results.entrySet()) {
+            JsonNode before = baseline.get(result.getKey());
+            if (before == null) {
+                System.out.printf("%-90s %12s -> %12.3f %s (new)%n", result.getKey(), "",
+                        score(result.getValue()), unit(result.getValue()));
+                continue;
+            }
+            double change = change(before, result.getValue());
+            boolean significant = !overlap(before, result.getValue());
+            boolean regressed = change > tolerance && significant;
+            regressions += regressed ? 1 : 0;
+            System.out.printf("%-90s %12.3f -> %12.3f %s %+.1f%%%s%n", result.getKey(),
+                    score(before), score(result.getValue()), unit(result.getValue()), change * 100,
+                    regressed ? "  REGRESSION" : change > tolerance ? "  (within error)" : "");
+        }
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.0f%%%n", regressions, tolerance * 100);
+            System.exit(1);
+        }
+    }
+
+    // how much worse the result is, positive means slower whatever the mode
+    private static double change(JsonNode before, JsonNode after) {
+        double ratio = score(after) / score(before);
+        boolean higherIsBetter = before.path("mode").asText().equals("thrpt");
+        return higherIsBetter ? 1 / ratio - 1 : ratio - 1;
+    }
+
+    // whether the confidence intervals share a value, without a reported interval the score is used
+    private static boolean overlap(JsonNode before, JsonNode after) {
+        double[] first = confidence(before);
+        double[] second = confidence(after);
+        return first[0] <= second[1] && second[0] <= first[1];
+    }
+
+    private static double[] confidence(JsonNode benchmark) {
+        JsonNode interval = benchmark.path("primaryMetric").path("scoreConfidence");
+        double score = score(benchmark);
+        if (interval.size() != 2 || Double.isNaN(interval.get(0).asDouble()) || Double.isNaN(interval.get(1).asDouble())) {
+            return new double[]{score, score};
+        }
+        return new double[]{interval.get(0).asDouble(), interval.get(1).asDouble()};
+    }
+
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> benchmarks = new LinkedHashMap<>();
+        for (JsonNode benchmark : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(benchmark.path("benchmark").asText());
+            benchmark.path("params").fields().forEachRemaining(param ->
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText()));
+            benchmarks.put(key.toString(), benchmark);
+        }
+        return benchmarks;
+    }
+
+    private static double score(JsonNode benchmark) {
+        return benchmark.path("primaryMetric").path("score").asDouble();
+    }
+
+    private static String unit(JsonNode benchmark) {
+        return benchmark.path("primaryMetric").path("scoreUnit").asText();
+    }
+}
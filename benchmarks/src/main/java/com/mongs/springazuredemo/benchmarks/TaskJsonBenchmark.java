@@ -0,0 +1,88 @@
+package com.mongs.springazuredemo.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongs.springazuredemo.Task;
+import com.mongs.springazuredemo.TaskPage;
+import com.mongs.springazuredemo.TaskStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Jackson serialization of a task, a page of tasks as GET /api/tasks returns it, and
+ * reading a task request body, with the ObjectMapper Spring Boot configures for the app
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskJsonBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private AnnotationConfigApplicationContext context;
+    private ObjectMapper objectMapper;
+    private Task task;
+    private TaskPage page;
+    private byte[] taskJson;
+    private byte[] pageJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = new AnnotationConfigApplicationContext(JacksonAutoConfiguration.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        task = task(1);
+        page = new TaskPage(LongStream.rangeClosed(1, PAGE_SIZE).mapToObj(TaskJsonBenchmark::task).toList(),
+                "eyJjcmVhdGVkRGF0ZSI6IjIwMjQtMDUtMDFUMTI6MDA6MDAiLCJpZCI6MTAwfQ");
+        taskJson = objectMapper.writeValueAsBytes(task);
+        pageJson = objectMapper.writeValueAsBytes(page);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] serializeTask() throws Exception {
+        return objectMapper.writeValueAsBytes(task);
+    }
+
+    @Benchmark
+    public byte[] serializeTaskPage() throws Exception {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public Task deserializeTask() throws Exception {
+        return objectMapper.readValue(taskJson, Task.class);
+    }
+
+    @Benchmark
+    public List<Task> deserializeTaskPage() throws Exception {
+        return objectMapper.readValue(pageJson, TaskPage.class).items();
+    }
+
+    private static Task task(long id) {
+        return new Task(id, "Task " + id, "Description of task " + id + " with a few more words in it",
+                TaskStatus.values()[(int) (id % TaskStatus.values().length)],
+                LocalDateTime.of(2024, 5, 1, 12, 0).plusMinutes(id), id % 3);
+    }
+}
@@ -0,0 +1,103 @@
+package com.mongs.springazuredemo.benchmarks;
+
+import com.mongs.springazuredemo.Task;
+import com.mongs.springazuredemo.TaskFilter;
+import com.mongs.springazuredemo.TaskPage;
+import com.mongs.springazuredemo.TaskService;
+import com.mongs.springazuredemo.TaskStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The filtered task listing against growing tables. With the (status, created_date, id) and
+ * (created_date, id) indexes in place a page costs about the same at every size, a full scan
+ * would grow with the table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskListingBenchmark {
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Param({"1000", "10000", "100000"})
+    public int tableSize;
+
+    private ConfigurableApplicationContext context;
+    private TaskService taskService;
+    private String secondPageCursor;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(TaskServiceBenchmark.BenchmarkConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:listing;DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.cache.type=none",
+                        "logging.level.root=warn")
+                .run();
+        taskService = context.getBean(TaskService.class);
+        insertTasks(context.getBean(JdbcTemplate.class));
+        secondPageCursor = taskService.getAllTasks(pendingFilter(), null, 50).nextCursor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Task> statusPage() {
+        return taskService.getAllTasks(pendingFilter(), secondPageCursor, 50).items();
+    }
+
+    @Benchmark
+    public List<Task> newestPage() {
+        TaskPage page = taskService.getAllTasks(new TaskFilter(null, EPOCH, null, Sort.Direction.DESC), null, 50);
+        return page.items();
+    }
+
+    private static TaskFilter pendingFilter() {
+        return new TaskFilter(TaskStatus.PENDING, EPOCH, null, Sort.Direction.ASC);
+    }
+
+    private void insertTasks(JdbcTemplate jdbcTemplate) {
+        List<Object[]> rows = new ArrayList<>(tableSize);
+        for (int i = 0; i < tableSize; i++) {
+            // a third of the rows are pending, the rest are spread over the other states
+            String status = switch (i % 3) {
+                case 0 -> TaskStatus.PENDING.getCode();
+                case 1 -> TaskStatus.IN_PROGRESS.getCode();
+                default -> TaskStatus.COMPLETED.getCode();
+            };
+            rows.add(new Object[]{1_000_000L + i, "task " + i, status, Timestamp.valueOf(EPOCH.plusSeconds(i))});
+        }
+        jdbcTemplate.batchUpdate(
+                "insert into tasks (id, title, status, created_date, version) values (?, ?, ?, ?, 0)", rows);
+    }
+}
@@ -0,0 +1,167 @@
+package com.mongs.springazuredemo.benchmarks;
+
+import com.mongs.springazuredemo.BatchItemResult;
+import com.mongs.springazuredemo.Task;
+import com.mongs.springazuredemo.TaskFilter;
+import com.mongs.springazuredemo.TaskPage;
+import com.mongs.springazuredemo.TaskRepository;
+import com.mongs.springazuredemo.TaskService;
+import com.mongs.springazuredemo.TaskStatistics;
+import com.mongs.springazuredemo.TaskStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.cache.CacheAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * TaskService CRUD through the real repositories, transactions and task cache against
+ * an in-memory H2 database. Measures the application's own overhead per call, the
+ * network round trips to PostgreSQL come on top of this.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskServiceBenchmark {
+
+    private static final int SEEDED_TASKS = 1_000;
+    private static final int CREATED_PER_CALL = 100;
+
+    @SpringBootConfiguration
+    @EnableCaching
+    @EntityScan(basePackageClasses = Task.class)
+    @EnableJpaRepositories(basePackageClasses = TaskRepository.class)
+    @ImportAutoConfiguration({
+            DataSourceAutoConfiguration.class,
+            DataSourceTransactionManagerAutoConfiguration.class,
+            JdbcTemplateAutoConfiguration.class,
+            HibernateJpaAutoConfiguration.class,
+            JpaRepositoriesAutoConfiguration.class,
+            TransactionAutoConfiguration.class,
+            ValidationAutoConfiguration.class,
+            CacheAutoConfiguration.class
+    })
+    @Import({TaskService.class, TaskStatistics.class})
+    static class BenchmarkConfiguration {
+    }
+
+    private ConfigurableApplicationContext context;
+    private TaskService taskService;
+    private JdbcTemplate jdbcTemplate;
+    private Long existingId;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(BenchmarkConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+                        // the task cache as configured in application.yml
+                        "spring.cache.type=caffeine",
+                        "spring.cache.cache-names=tasks",
+                        "spring.cache.caffeine.spec=maximumSize=10000,expireAfterWrite=60s",
+                        "logging.level.root=warn")
+                .run();
+        taskService = context.getBean(TaskService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        taskService.createTasks(IntStream.range(0, SEEDED_TASKS).mapToObj(i -> newTask()).toList());
+        existingId = taskService.createTask(newTask()).getId();
+    }
+
+    // the create benchmarks keep adding rows, every iteration starts again from the seeded table
+    @TearDown(Level.Iteration)
+    public void deleteCreated() {
+        jdbcTemplate.update("delete from tasks where id > ?", existingId);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Task createAndDelete() {
+        Task created = taskService.createTask(newTask());
+        taskService.deleteTask(created.getId(), created.getVersion());
+        return created;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CREATED_PER_CALL)
+    public Task createOneByOne() {
+        Task created = null;
+        for (int i = 0; i < CREATED_PER_CALL; i++) {
+            created = taskService.createTask(newTask());
+        }
+        return created;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CREATED_PER_CALL)
+    public List<BatchItemResult> createBatch() {
+        return taskService.createTasks(IntStream.range(0, CREATED_PER_CALL).mapToObj(i -> newTask()).toList());
+    }
+
+    @Benchmark
+    public Optional<Task> getById() {
+        return taskService.getTaskById(existingId);
+    }
+
+    @Benchmark
+    public Task update() {
+        Task details = newTask();
+        details.setStatus(TaskStatus.IN_PROGRESS);
+        return taskService.updateTask(existingId, details, null);
+    }
+
+    @Benchmark
+    public List<Task> firstPage() {
+        TaskPage page = taskService.getAllTasks(new TaskFilter(null, null, null, Sort.Direction.ASC), null, 50);
+        return page.items();
+    }
+
+    private Task newTask() {
+        Task task = new Task();
+        task.setTitle("Benchmark task " + counter++);
+        task.setDescription("Created by TaskServiceBenchmark");
+        return task;
+    }
+}
@@ -0,0 +1,24 @@
+package com.mongs.springazuredemo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Outcome of a single item in a batch request, in request order
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchItemResult(int index, Status status, Task task, List<String> errors) {
+
+    public enum Status {
+        CREATED, UPDATED, COMPLETED, INVALID, NOT_FOUND
+    }
+
+    public static BatchItemResult success(int index, Status status, Task task) {
+        return new BatchItemResult(index, status, task, null);
+    }
+
+    public static BatchItemResult failure(int index, Status status, List<String> errors) {
+        return new BatchItemResult(index, status, null, errors);
+    }
+}
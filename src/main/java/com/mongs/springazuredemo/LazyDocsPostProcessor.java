@@ -0,0 +1,41 @@
+package com.mongs.springazuredemo;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Marks the API documentation beans, SpringDoc's and SwaggerConfiguration, as lazy so they are
+ * created on the first /api-docs or /swagger-ui request instead of during startup. Everything
+ * else is still created eagerly, startup errors in the request path show up at boot.
+ */
+@Component
+public class LazyDocsPostProcessor implements BeanFactoryPostProcessor {
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            // @Bean methods have no class name of their own, they belong to their configuration class
+            String factoryBean = definition.getFactoryBeanName();
+            String configurationClass = factoryBean != null && beanFactory.containsBeanDefinition(factoryBean)
+                    ? beanFactory.getBeanDefinition(factoryBean).getBeanClassName()
+                    : null;
+            if (isDocs(definition.getBeanClassName()) || isDocs(configurationClass)) {
+                definition.setLazyInit(true);
+            }
+        }
+    }
+
+    private static boolean isDocs(String className) {
+        if (className == null) {
+            return false;
+        }
+        // configuration classes are CGLIB subclasses by now
+        int proxySuffix = className.indexOf(ClassUtils.CGLIB_CLASS_SEPARATOR);
+        String userClass = proxySuffix < 0 ? className : className.substring(0, proxySuffix);
+        return userClass.startsWith("org.springdoc.") || userClass.equals(SwaggerConfiguration.class.getName());
+    }
+}
@@ -0,0 +1,130 @@
+package com.mongs.springazuredemo;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+
+/**
+ * Application metrics that Spring Boot does not record on its own. Endpoint latency,
+ * Hikari pool and Hibernate session metrics come from actuator, see management in application.yml.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    private static final ThreadLocal<int[]> STATEMENTS = new ThreadLocal<>();
+    private static final Set<String> STATEMENT_FACTORIES = Set.of("createStatement", "prepareStatement", "prepareCall");
+
+    /**
+     * Counts the JDBC statements created on the request thread, through Hibernate and JdbcTemplate
+     * alike. Wraps the dataSource bean, the one JPA and JdbcTemplate use, and not the pools behind
+     * it, so a statement is counted once. The inserts TaskIngestPipeline commits on its own
+     * writer thread are not seen.
+     */
+    @Bean
+    public static BeanPostProcessor statementCountingDataSource() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && beanName.equals("dataSource")) {
+                    return new StatementCountingDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Records jdbc.statements.per.request per endpoint, an N+1 query shows up as a count
+     * that grows with the page size. Statements run by streamed responses after the handler
+     * returned are not counted.
+     */
+    @Bean
+    public FilterRegistrationBean<OncePerRequestFilter> statementsPerRequestFilter(MeterRegistry registry) {
+        OncePerRequestFilter filter = new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                            FilterChain chain) throws ServletException, IOException {
+                int[] count = new int[1];
+                STATEMENTS.set(count);
+                try {
+                    chain.doFilter(request, response);
+                } finally {
+                    STATEMENTS.remove();
+                    Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                    DistributionSummary.builder("jdbc.statements.per.request")
+                            .description("JDBC statements created while handling a request")
+                            .tag("method", request.getMethod())
+                            .tag("uri", uri != null ? uri.toString() : "UNKNOWN")
+                            .register(registry)
+                            .record(count[0]);
+                }
+            }
+        };
+        return new FilterRegistrationBean<>(filter);
+    }
+
+    // closes the pool it wraps on shutdown, the way the unwrapped bean would have been closed
+    static class StatementCountingDataSource extends DelegatingDataSource implements Closeable {
+
+        StatementCountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return counting(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return counting(super.getConnection(username, password));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (getTargetDataSource() instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+
+        private static Connection counting(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "equals" -> proxy == args[0];
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        default -> {
+                            if (STATEMENT_FACTORIES.contains(method.getName())) {
+                                int[] count = STATEMENTS.get();
+                                if (count != null) {
+                                    count[0]++;
+                                }
+                            }
+                            try {
+                                yield method.invoke(connection, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getTargetException();
+                            }
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.mongs.springazuredemo;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends read-only transactions to the read replicas and everything else to the primary.
+ * The connection is only taken once the transaction has marked it read-only, so a
+ * read-only transaction opened inside a read-write one stays on the primary as well.
+ * Sessions give their connection back after every transaction, otherwise an open-in-view
+ * request would keep the replica connection of its first read for the writes that follow.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replicas.enabled", havingValue = "true")
+public class ReadReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaDataSource replicaDataSource(
+            HikariDataSource primaryDataSource,
+            @Value("${app.datasource.replicas.urls}") List<String> urls,
+            @Value("${app.datasource.replicas.check-interval:5s}") Duration checkInterval,
+            @Value("${app.datasource.replicas.max-lag:0s}") Duration maxLag,
+            @Value("${app.datasource.replicas.lag-query:}") String lagQuery,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            // same pool settings and credentials as the primary, started on first use
+            HikariDataSource replica = new HikariDataSource();
+            primaryDataSource.copyStateTo(replica);
+            replica.setJdbcUrl(url.trim());
+            replica.setPoolName("replica-" + (replicas.size() + 1));
+            meterRegistry.ifAvailable(registry -> replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            replicas.add(replica);
+        }
+        ReplicaDataSource replicaDataSource = new ReplicaDataSource(primaryDataSource, replicas, checkInterval, maxLag, lagQuery);
+        meterRegistry.ifAvailable(registry -> replicaDataSource.getReplicas().forEach(replica -> {
+            Gauge.builder("db.replica.healthy", replica, r -> r.isHealthy() ? 1 : 0)
+                    .tag("replica", replica.name()).register(registry);
+            Gauge.builder("db.replica.lag", replica, r -> r.getLag().toMillis() / 1000.0)
+                    .tag("replica", replica.name()).baseUnit("seconds").register(registry);
+        }));
+        return replicaDataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+
+    // the transaction manager takes its dialect from the entity manager factory
+    @Bean
+    public static BeanPostProcessor connectionReleasingJpaDialect() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof LocalContainerEntityManagerFactoryBean entityManagerFactory) {
+                    entityManagerFactory.setJpaDialect(new ConnectionReleasingJpaDialect());
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Hibernate holds a session's connection until the session closes, which is what lets Spring
+     * mark it read-only before the first statement. This releases it when each transaction ends,
+     * so the next transaction of the same session is routed by its own read-only flag.
+     */
+    static class ConnectionReleasingJpaDialect extends HibernateJpaDialect {
+
+        private record TransactionData(SessionImplementor session, Object data) {
+        }
+
+        @Override
+        public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+                throws SQLException {
+            Object data = super.beginTransaction(entityManager, definition);
+            return new TransactionData(entityManager.unwrap(SessionImplementor.class), data);
+        }
+
+        @Override
+        public void cleanupTransaction(Object transactionData) {
+            if (!(transactionData instanceof TransactionData transaction)) {
+                // from prepareTransaction, the session is not ours to disconnect
+                super.cleanupTransaction(transactionData);
+                return;
+            }
+            super.cleanupTransaction(transaction.data());
+            if (transaction.session().isOpen()) {
+                transaction.session().getJdbcCoordinator().getLogicalConnection().manualDisconnect();
+            }
+        }
+    }
+}
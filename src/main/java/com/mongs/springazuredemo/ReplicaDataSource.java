@@ -0,0 +1,173 @@
+package com.mongs.springazuredemo;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hands out connections of the read replicas. Each replica is checked every check-interval,
+ * one that cannot be reached or lags the primary by more than max-lag is skipped until it
+ * recovers, and among the healthy ones the least busy pool is picked. With no healthy replica,
+ * or inside onPrimary, connections come from the primary.
+ */
+@Slf4j
+public class ReplicaDataSource extends AbstractDataSource implements Closeable {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final Duration maxLag;
+    private final String lagQuery;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthCheck;
+
+    public ReplicaDataSource(DataSource primary, List<HikariDataSource> replicas, Duration checkInterval,
+                             Duration maxLag, String lagQuery) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.maxLag = maxLag;
+        this.lagQuery = lagQuery;
+        this.healthCheck = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthCheck.scheduleWithFixedDelay(this::checkHealth, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a read that has to see the caller's own writes on the primary, even when it is read-only
+     * @param read The read, connections it opens come from the primary
+     * @return The result of the read
+     */
+    public static <T> T onPrimary(Supplier<T> read) {
+        Boolean previous = PRIMARY_REQUIRED.get();
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_REQUIRED.remove();
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (PRIMARY_REQUIRED.get() == null) {
+            for (Replica replica = pick(); replica != null; replica = pick()) {
+                try {
+                    return replica.dataSource.getConnection();
+                } catch (SQLException | RuntimeException e) {
+                    log.warn("Replica {} failed, routing reads elsewhere until it recovers", replica.name(), e);
+                    replica.healthy = false;
+                }
+            }
+        }
+        return primary.getConnection();
+    }
+
+    // the replica pools are built with the primary's credentials, a connection for other credentials
+    // can only come from the primary, which answers it like it would without replicas
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    // least busy healthy replica, starting from a rotating offset so equally busy ones take turns
+    private Replica pick() {
+        int offset = Math.floorMod(next.getAndIncrement(), Math.max(replicas.size(), 1));
+        Replica best = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((offset + i) % replicas.size());
+            if (replica.healthy && (best == null || replica.activeConnections() < best.activeConnections())) {
+                best = replica;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Check every replica now, the scheduled check calls this every check-interval
+     */
+    public synchronized void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                replica.lag = lag(connection);
+                healthy = maxLag.isZero() || replica.lag.compareTo(maxLag) <= 0;
+            } catch (SQLException | RuntimeException e) {
+                healthy = false;
+            }
+            if (healthy != replica.healthy) {
+                log.info("Replica {} is now {}, lag {}", replica.name(), healthy ? "healthy" : "unhealthy", replica.lag);
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    private Duration lag(Connection connection) throws SQLException {
+        if (maxLag.isZero() || lagQuery.isBlank()) {
+            return connection.isValid(5) ? Duration.ZERO : Duration.ofDays(1);
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(lagQuery)) {
+            double seconds = result.next() ? result.getDouble(1) : 0;
+            return Duration.ofMillis(Math.round(seconds * 1000));
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    public void close() {
+        healthCheck.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    /**
+     * A replica pool with the outcome of its last health check
+     */
+    public static final class Replica {
+        private final HikariDataSource dataSource;
+        private volatile boolean healthy;
+        private volatile Duration lag = Duration.ZERO;
+
+        private Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        public String name() {
+            return dataSource.getPoolName();
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public Duration getLag() {
+            return lag;
+        }
+
+        private int activeConnections() {
+            return dataSource.getHikariPoolMXBean() == null ? 0 : dataSource.getHikariPoolMXBean().getActiveConnections();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.mongs.springazuredemo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Applies the Flyway migrations in db/migration on startup. Unlike spring.flyway.enabled,
+ * app.flyway.migrate-on-startup is read at run time, so an AOT-processed build can still
+ * skip them, the fast-startup training run has no database to migrate.
+ */
+@Configuration
+public class SchemaMigrationConfiguration {
+
+    @Bean
+    public FlywayMigrationStrategy migrationStrategy(@Value("${app.flyway.migrate-on-startup:true}") boolean migrate) {
+        return flyway -> {
+            if (migrate) {
+                flyway.migrate();
+            }
+        };
+    }
+}
@@ -2,12 +2,20 @@ package com.mongs.springazuredemo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableCaching
+@EnableScheduling
 public class SpringAzureDemoApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(SpringAzureDemoApplication.class, args);
+        SpringApplication application = new SpringApplication(SpringAzureDemoApplication.class);
+        // records the startup steps for StartupReport and /actuator/startup
+        application.setApplicationStartup(new BufferingApplicationStartup(10_000));
+        application.run(args);
     }
 
 }
@@ -0,0 +1,74 @@
+package com.mongs.springazuredemo;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Logs where boot time went once the application is ready: the time per startup phase and
+ * the slowest beans to create. The full step timeline is also served by /actuator/startup.
+ * Only has data when main installs a BufferingApplicationStartup.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StartupReport implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final ApplicationStartup applicationStartup;
+
+    @Value("${app.startup.report.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.startup.report.slowest-beans:15}")
+    private int slowestBeans;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (enabled && applicationStartup instanceof BufferingApplicationStartup buffering) {
+            log.info("Startup report, ready after {} ms\n{}", event.getTimeTaken().toMillis(),
+                    report(buffering.getBufferedTimeline().getEvents(), slowestBeans));
+        }
+    }
+
+    static String report(List<StartupTimeline.TimelineEvent> events, int slowestBeans) {
+        // steps nest, so each total includes the steps below it
+        Map<String, Duration> byStep = events.stream()
+                .filter(event -> !event.getStartupStep().getName().equals("spring.beans.instantiate"))
+                .collect(Collectors.toMap(event -> event.getStartupStep().getName(), StartupTimeline.TimelineEvent::getDuration,
+                        Duration::plus, LinkedHashMap::new));
+        StringBuilder report = new StringBuilder("  phases:\n");
+        byStep.entrySet().stream()
+                .sorted(Map.Entry.<String, Duration>comparingByValue().reversed())
+                .forEach(step -> report.append(String.format("    %6d ms  %s%n", step.getValue().toMillis(), step.getKey())));
+
+        report.append("  slowest beans, including their dependencies:\n");
+        events.stream()
+                .filter(event -> event.getStartupStep().getName().equals("spring.beans.instantiate"))
+                .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                .limit(slowestBeans)
+                .forEach(event -> report.append(String.format("    %6d ms  %s%n", event.getDuration().toMillis(), beanName(event))));
+        return report.toString();
+    }
+
+    private static String beanName(StartupTimeline.TimelineEvent event) {
+        for (var tag : event.getStartupStep().getTags()) {
+            if (tag.getKey().equals("beanName")) {
+                return tag.getValue();
+            }
+        }
+        return "?";
+    }
+}
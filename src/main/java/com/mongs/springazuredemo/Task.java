@@ -2,9 +2,11 @@ package com.mongs.springazuredemo;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Check;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
@@ -13,18 +15,33 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @NoArgsConstructor
 @Data
-@Table(name = "tasks")
+@Table(name = "tasks", indexes = {
+        @Index(name = "idx_tasks_status_created", columnList = "status, created_date, id"),
+        @Index(name = "idx_tasks_created", columnList = "created_date, id")
+})
 public class Task {
 
+    // pooled sequence so inserts can be JDBC-batched, V1__tasks_schema.sql
+    // sets the database sequence to INCREMENT BY 50 to match allocationSize
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tasks_seq")
+    @SequenceGenerator(name = "tasks_seq", sequenceName = "tasks_id_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Title is mandatory")
     private String title;
     private String description;
-    private String status = "pending";
+
+    // an explicit "status": null in the body would otherwise reach the NOT NULL column
+    @NotNull(message = "Status is mandatory")
+    @Column(length = 1, nullable = false)
+    @Convert(converter = TaskStatus.CodeConverter.class)
+    @Check(constraints = "status in ('P', 'I', 'C')")
+    private TaskStatus status = TaskStatus.PENDING;
 
     @CreationTimestamp
     private LocalDateTime createdDate;
+
+    @Version
+    private Long version;
 }
@@ -0,0 +1,7 @@
+package com.mongs.springazuredemo;
+
+/**
+ * Result of a conditional write: the row as written (or as deleted) and the status it had before
+ */
+public record TaskChange(TaskStatus previousStatus, Task task) {
+}
@@ -1,25 +1,92 @@
 package com.mongs.springazuredemo;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/tasks")
 @RequiredArgsConstructor
 public class TaskController {
 
+    private static final int DEFAULT_PAGE_LIMIT = 50;
+    private static final int MAX_PAGE_LIMIT = 500;
+    private static final int MAX_BATCH_SIZE = 10_000;
+
     private final TaskService taskService;
+    private final ObjectMapper objectMapper;
 
-    // Get all tasks
+    // Get tasks one keyset page at a time, optionally filtered by status and creation date
     @GetMapping
-    public ResponseEntity<List<Task>> getAllTasks() {
-        List<Task> tasks = taskService.getAllTasks();
-        return new ResponseEntity<>(tasks, HttpStatus.OK);
+    public ResponseEntity<TaskPage> getAllTasks(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @RequestParam(defaultValue = "asc") String order,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_LIMIT) int limit,
+            ServletWebRequest webRequest) {
+        checkPageLimit(limit);
+        TaskFilter filter = filter(status, createdFrom, createdTo, order);
+        // the tag costs one narrow query, a matching If-None-Match never loads the page
+        String eTag = taskService.getPageETag(filter, cursor, limit, null);
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(webRequest.getResponse().getStatus()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .body(taskService.getAllTasks(filter, cursor, limit));
+    }
+
+    // Same page with only the listed fields, e.g. fields=id,title,status
+    @GetMapping(params = "fields")
+    public ResponseEntity<TaskFieldsPage> getAllTaskFields(
+            @RequestParam String fields,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @RequestParam(defaultValue = "asc") String order,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_LIMIT) int limit,
+            ServletWebRequest webRequest) {
+        checkPageLimit(limit);
+        Set<TaskField> taskFields = TaskField.parse(fields);
+        TaskFilter filter = filter(status, createdFrom, createdTo, order);
+        String eTag = taskService.getPageETag(filter, cursor, limit, taskFields);
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(webRequest.getResponse().getStatus()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .body(taskService.getAllTaskFields(filter, cursor, limit, taskFields));
+    }
+
+    // Stream all tasks as newline-delimited JSON
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllTasks() {
+        ObjectWriter writer = objectMapper.writerFor(Task.class);
+        StreamingResponseBody body = outputStream -> taskService.streamAllTasks(task -> writeLine(writer, task, outputStream));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     // Get task by ID
@@ -27,33 +94,114 @@ public class TaskController {
     public ResponseEntity<Task> getTaskById(@PathVariable Long id) {
         Task task = taskService.getTaskById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Task not found with id: " + id));
-        return new ResponseEntity<>(task, HttpStatus.OK);
+        return ResponseEntity.ok()
+                .eTag(TaskETags.of(task))
+                .body(task);
+    }
+
+    // Get task by ID with only the listed fields, served from the task cache like the full task
+    @GetMapping(value = "/{id}", params = "fields")
+    public ResponseEntity<TaskFields> getTaskFieldsById(@PathVariable Long id, @RequestParam String fields) {
+        Set<TaskField> taskFields = TaskField.parse(fields);
+        Task task = taskService.getTaskById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Task not found with id: " + id));
+        return ResponseEntity.ok()
+                .eTag(TaskETags.of(task))
+                .body(TaskFields.of(task, taskFields));
     }
 
     // Create new task
     @PostMapping
     public ResponseEntity<Task> createTask(@Valid @RequestBody Task task) {
         Task newTask = taskService.createTask(task);
-        return new ResponseEntity<>(newTask, HttpStatus.CREATED);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .eTag(TaskETags.of(newTask))
+                .body(newTask);
     }
 
-    // Update task
+    // Update task, optionally only if it still matches the If-Match version
     @PutMapping("/{id}")
-    public ResponseEntity<Task> updateTask(@PathVariable Long id, @Valid @RequestBody Task task) {
-        Task updatedTask = taskService.updateTask(id, task);
-        return new ResponseEntity<>(updatedTask, HttpStatus.OK);
+    public ResponseEntity<Task> updateTask(@PathVariable Long id, @Valid @RequestBody Task task,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Task updatedTask = taskService.updateTask(id, task, TaskETags.parseIfMatch(ifMatch));
+        return ResponseEntity.ok()
+                .eTag(TaskETags.of(updatedTask))
+                .body(updatedTask);
     }
 
-    // Delete task
+    // Delete task, optionally only if it still matches the If-Match version
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteTask(@PathVariable Long id) {
-        taskService.deleteTask(id);
+    public ResponseEntity<Void> deleteTask(@PathVariable Long id,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        taskService.deleteTask(id, TaskETags.parseIfMatch(ifMatch));
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
     @PatchMapping("/{id}/complete")
-    public ResponseEntity<Task> markTaskAsCompleted(@PathVariable Long id) {
-        Task completedTask = taskService.markTaskAsCompleted(id);
-        return new ResponseEntity<>(completedTask, HttpStatus.OK);
+    public ResponseEntity<Task> markTaskAsCompleted(@PathVariable Long id,
+                                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Task completedTask = taskService.markTaskAsCompleted(id, TaskETags.parseIfMatch(ifMatch));
+        return ResponseEntity.ok()
+                .eTag(TaskETags.of(completedTask))
+                .body(completedTask);
+    }
+
+    // Per-status and per-day task counts
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return new ResponseEntity<>(taskService.getStats(), HttpStatus.OK);
+    }
+
+    // Create many tasks at once
+    @PostMapping("/batch")
+    public ResponseEntity<List<BatchItemResult>> createTasks(@RequestBody List<Task> tasks) {
+        checkBatchSize(tasks);
+        List<BatchItemResult> results = taskService.createTasks(tasks);
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
+    // Update many tasks at once, each task must carry its id
+    @PutMapping("/batch")
+    public ResponseEntity<List<BatchItemResult>> updateTasks(@RequestBody List<Task> tasks) {
+        checkBatchSize(tasks);
+        List<BatchItemResult> results = taskService.updateTasks(tasks);
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
+    // Mark many tasks as completed at once
+    @PatchMapping("/batch/complete")
+    public ResponseEntity<List<BatchItemResult>> markTasksAsCompleted(@RequestBody List<Long> ids) {
+        checkBatchSize(ids);
+        List<BatchItemResult> results = taskService.markTasksAsCompleted(ids);
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
+    private static void checkPageLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_LIMIT);
+        }
+    }
+
+    private static TaskFilter filter(String status, LocalDateTime createdFrom, LocalDateTime createdTo, String order) {
+        return new TaskFilter(
+                status == null ? null : TaskStatus.fromValue(status),
+                createdFrom,
+                createdTo,
+                Sort.Direction.fromString(order));
+    }
+
+    private static void checkBatchSize(List<?> items) {
+        if (items.isEmpty() || items.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch must contain between 1 and " + MAX_BATCH_SIZE + " items");
+        }
+    }
+
+    private static void writeLine(ObjectWriter writer, Task task, OutputStream outputStream) {
+        try {
+            outputStream.write(writer.writeValueAsBytes(task));
+            outputStream.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write task " + task.getId(), e);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.mongs.springazuredemo;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps task versions to and from strong entity tags
+ */
+public final class TaskETags {
+
+    private TaskETags() {
+    }
+
+    /**
+     * @return A strong entity tag derived from the task's version column
+     */
+    public static String of(Task task) {
+        return "\"" + version(task.getVersion()) + "\"";
+    }
+
+    /**
+     * Digests the id and version of every row in a page's window, the page plus the row that
+     * decides whether another page follows, so the tag changes whenever a row on the page is
+     * inserted, updated or deleted. Versions only grow, and SHA-256 keeps two different windows
+     * from sharing a tag, which would otherwise answer a stale 304.
+     *
+     * @param window The rows of the page and the one after it, in page order
+     * @param fields The selected fields of a sparse page, or null for full tasks
+     * @return A strong entity tag for the page
+     */
+    public static String of(List<TaskFields> window, Set<TaskField> fields) {
+        MessageDigest digest = sha256();
+        // enum hash codes are identity hashes, different on every JVM, the ordinals are not
+        long selected = -1;
+        if (fields != null) {
+            selected = 0;
+            for (TaskField field : fields) {
+                selected |= 1L << field.ordinal();
+            }
+        }
+        ByteBuffer row = ByteBuffer.allocate(2 * Long.BYTES);
+        digest.update(row.putLong(selected).putLong(window.size()).flip());
+        for (TaskFields task : window) {
+            digest.update(row.clear().putLong(task.id()).putLong(version(task.version())).flip());
+        }
+        return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // rows written before the version column existed have none, they count as version 0
+    private static long version(Long version) {
+        return version != null ? version : 0;
+    }
+
+    /**
+     * Parses an If-Match header into the expected task version
+     *
+     * @param ifMatch The raw header value, may be null
+     * @return The expected version, or null when any version matches
+     * @throws PreconditionFailedException if the header does not name a task version
+     */
+    public static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+            throw new PreconditionFailedException("If-Match must be a single strong entity tag: " + ifMatch);
+        }
+        try {
+            return Long.parseLong(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException("If-Match does not match any task version: " + ifMatch);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.mongs.springazuredemo;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Task properties a client can pick with the fields= query parameter
+ */
+public enum TaskField {
+    ID("id", Task::getId),
+    TITLE("title", Task::getTitle),
+    DESCRIPTION("description", Task::getDescription),
+    STATUS("status", Task::getStatus),
+    CREATED_DATE("createdDate", Task::getCreatedDate),
+    VERSION("version", Task::getVersion);
+
+    private final String property;
+    private final Function<Task, Object> getter;
+
+    TaskField(String property, Function<Task, Object> getter) {
+        this.property = property;
+        this.getter = getter;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Object get(Task task) {
+        return getter.apply(task);
+    }
+
+    /**
+     * @param fields Comma separated property names, e.g. "id,title,status"
+     * @return The named fields, in declaration order
+     * @throws IllegalArgumentException if the list is empty or names an unknown property
+     */
+    public static Set<TaskField> parse(String fields) {
+        Set<TaskField> parsed = EnumSet.noneOf(TaskField.class);
+        for (String name : fields.split(",")) {
+            if (!name.isBlank()) {
+                parsed.add(Arrays.stream(values())
+                        .filter(field -> field.property.equals(name.trim()))
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException("Unknown task field: " + name.trim())));
+            }
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("fields must name at least one task field");
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,26 @@
+package com.mongs.springazuredemo;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Some of a task's properties as plain values, serialized as just the requested fields.
+ * The id, creation date and version are kept for cursors and entity tags even when not requested.
+ */
+public record TaskFields(Long id, LocalDateTime createdDate, Long version, Map<String, Object> values) {
+
+    public static TaskFields of(Task task, Set<TaskField> fields) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        fields.forEach(field -> values.put(field.getProperty(), field.get(task)));
+        return new TaskFields(task.getId(), task.getCreatedDate(), task.getVersion(), values);
+    }
+
+    @JsonValue
+    public Map<String, Object> values() {
+        return values;
+    }
+}
@@ -0,0 +1,20 @@
+package com.mongs.springazuredemo;
+
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDateTime;
+
+/**
+ * Optional server-side filters for the task listing, null fields are not applied
+ *
+ * @param status      Only tasks in this status
+ * @param createdFrom Only tasks created at or after this instant
+ * @param createdTo   Only tasks created before this instant
+ * @param direction   Order of the (createdDate, id) keyset
+ */
+public record TaskFilter(TaskStatus status, LocalDateTime createdFrom, LocalDateTime createdTo, Sort.Direction direction) {
+
+    public static TaskFilter none() {
+        return new TaskFilter(null, null, null, Sort.Direction.ASC);
+    }
+}
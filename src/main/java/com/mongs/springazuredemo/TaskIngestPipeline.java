@@ -0,0 +1,244 @@
+package com.mongs.springazuredemo;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Group-commits concurrent task creates: a single writer collects submissions for up to
+ * max-wait or max-batch items and inserts them in one transaction, so a burst of
+ * POSTs costs a handful of commits instead of one each. At most queue-capacity
+ * creates may be outstanding; beyond that callers are rejected immediately.
+ * <p>
+ * Each queued task is claimed exactly once, either by the writer when it takes the task
+ * into a batch or by its caller when the submit-timeout expires first. A caller that wins
+ * the claim is told to retry and the writer skips the task; a caller that loses it waits
+ * for the commit already under way, so a retried create can never insert a duplicate.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.tasks.ingest.enabled", havingValue = "true")
+public class TaskIngestPipeline {
+
+    private final TaskRepository taskRepository;
+    private final TaskStatistics taskStatistics;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+
+    @Value("${app.tasks.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.tasks.ingest.max-batch:500}")
+    private int maxBatch;
+
+    @Value("${app.tasks.ingest.max-wait:PT0.005S}")
+    private Duration maxWait;
+
+    @Value("${app.tasks.ingest.submit-timeout:PT5S}")
+    private Duration submitTimeout;
+
+    private final BlockingQueue<PendingTask> queue = new LinkedBlockingQueue<>();
+    private Semaphore permits;
+    private Thread writer;
+    private volatile boolean running;
+    // submit holds the read lock, so once stop() has the write lock no new task can be queued
+    private final ReadWriteLock stopLock = new ReentrantReadWriteLock();
+
+    private record PendingTask(Task task, CompletableFuture<Task> result, AtomicBoolean claimed) {
+
+        private PendingTask(Task task) {
+            this(task, new CompletableFuture<>(), new AtomicBoolean());
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        permits = new Semaphore(queueCapacity);
+        running = true;
+        writer = new Thread(this::writeLoop, "task-ingest");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        stopLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            stopLock.writeLock().unlock();
+        }
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Queues a task for the next group commit
+     *
+     * @param task The validated task to create
+     * @return Completes with the saved task once its batch has committed
+     * @throws TaskIngestRejectedException if too many creates are already outstanding
+     */
+    public CompletableFuture<Task> submit(Task task) {
+        return enqueue(task).result();
+    }
+
+    private PendingTask enqueue(Task task) {
+        stopLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new TaskIngestRejectedException("Task ingest is shutting down, retry later");
+            }
+            if (!permits.tryAcquire()) {
+                throw new TaskIngestRejectedException("Task ingest queue is full, retry later");
+            }
+            PendingTask pending = new PendingTask(task);
+            pending.result().whenComplete((saved, error) -> permits.release());
+            queue.add(pending);
+            return pending;
+        } finally {
+            stopLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Queues a task and waits for its batch to commit
+     *
+     * @param task The validated task to create
+     * @return The saved task with its generated id
+     * @throws TaskIngestRejectedException if the queue is full or the task is still queued after
+     *                                      submit-timeout, in both cases nothing was written
+     */
+    public Task create(Task task) {
+        PendingTask pending = enqueue(task);
+        try {
+            return pending.result().get(submitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (pending.claim()) {
+                // the writer has not taken it yet and now never will
+                pending.result().cancel(false);
+                throw new TaskIngestRejectedException("Task ingest did not start within " + submitTimeout, e);
+            }
+            // already part of a batch that may commit, answer with its outcome instead of a retry
+            return awaitClaimed(pending);
+        } catch (ExecutionException e) {
+            throw failure(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (pending.claim()) {
+                pending.result().cancel(false);
+                throw new TaskIngestRejectedException("Interrupted while waiting for task ingest", e);
+            }
+            throw new IllegalStateException("Interrupted while task ingest was committing", e);
+        }
+    }
+
+    private Task awaitClaimed(PendingTask pending) {
+        try {
+            return pending.result().get();
+        } catch (ExecutionException e) {
+            throw failure(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while task ingest was committing", e);
+        }
+    }
+
+    private static RuntimeException failure(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException cause) {
+            return cause;
+        }
+        return new IllegalStateException("Task ingest failed", e.getCause());
+    }
+
+    private void writeLoop() {
+        List<PendingTask> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingTask first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWait.toNanos();
+                while (batch.size() < maxBatch) {
+                    PendingTask next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // stop() interrupts the wait, keep draining what is already queued
+                queue.drainTo(batch, maxBatch - batch.size());
+            }
+            // skip tasks whose callers gave up before the writer got to them
+            batch.removeIf(pending -> !pending.claim());
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingTask> batch) {
+        try {
+            List<Task> saved = transactionTemplate.execute(status -> {
+                List<Task> tasks = new ArrayList<>(batch.size());
+                for (PendingTask pending : batch) {
+                    tasks.add(save(pending.task()));
+                }
+                entityManager.flush();
+                entityManager.clear();
+                return tasks;
+            });
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(saved.get(i));
+            }
+        } catch (RuntimeException e) {
+            // one bad row must not fail its neighbours, retry them one by one
+            log.warn("Group commit of {} tasks failed, retrying individually", batch.size(), e);
+            for (PendingTask pending : batch) {
+                try {
+                    pending.result().complete(transactionTemplate.execute(status -> save(pending.task())));
+                } catch (RuntimeException single) {
+                    pending.result().completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    private Task save(Task task) {
+        task.setId(null);
+        task.setVersion(null);
+        Task saved = taskRepository.save(task);
+        taskStatistics.recordCreated(saved);
+        return saved;
+    }
+}
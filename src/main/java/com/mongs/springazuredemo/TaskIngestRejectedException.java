@@ -0,0 +1,15 @@
+package com.mongs.springazuredemo;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class TaskIngestRejectedException extends RuntimeException {
+    public TaskIngestRejectedException(String message) {
+        super(message);
+    }
+
+    public TaskIngestRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,9 @@
+package com.mongs.springazuredemo;
+
+import java.util.List;
+
+/**
+ * One page of tasks plus the cursor for the following page, null when there is none
+ */
+public record TaskPage(List<Task> items, String nextCursor) {
+}
@@ -0,0 +1,39 @@
+package com.mongs.springazuredemo;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Single-statement conditional writes, a null expected version matches any version,
+ * and reads that select only some columns
+ */
+public interface TaskRepositoryCustom {
+
+    /**
+     * @param status The new status, or null to keep the current one
+     * @return The updated task and its previous status, or empty when no row matched the id and version
+     */
+    Optional<TaskChange> updateIfVersionMatches(Long id, Long expectedVersion, String title, String description, TaskStatus status);
+
+    /**
+     * @return The updated task and its previous status, or empty when no row matched the id and version
+     */
+    Optional<TaskChange> updateStatusIfVersionMatches(Long id, Long expectedVersion, TaskStatus status);
+
+    /**
+     * @return The deleted row's id, status and creation date, or empty when no row matched the id and version
+     */
+    Optional<TaskChange> deleteIfVersionMatches(Long id, Long expectedVersion);
+
+    /**
+     * Selects only the given columns, plus id, createdDate and version, as plain values
+     * rather than managed entities
+     *
+     * @return At most limit rows matching the specification, in sort order
+     */
+    List<TaskFields> findFields(Specification<Task> spec, Sort sort, int limit, Set<TaskField> fields);
+}
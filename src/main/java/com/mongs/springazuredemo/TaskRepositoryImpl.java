@@ -0,0 +1,171 @@
+package com.mongs.springazuredemo;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Runs the conditional writes as plain JDBC. On PostgreSQL each write is a single
+ * statement that locks the row in a CTE and returns both the new row and the
+ * previous status. Other databases (H2 in tests) lock the row with a
+ * SELECT ... FOR UPDATE first, inside the same transaction. Sparse reads are criteria
+ * tuple queries, so nothing is put in the persistence context.
+ */
+@RequiredArgsConstructor
+class TaskRepositoryImpl implements TaskRepositoryCustom {
+
+    private static final String TASK_COLUMNS = "t.id, t.title, t.description, t.status, t.created_date, t.version";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    private volatile Boolean postgres;
+
+    @Override
+    @Transactional
+    public Optional<TaskChange> updateIfVersionMatches(Long id, Long expectedVersion, String title, String description, TaskStatus status) {
+        return update("title = ?, description = ?, status = coalesce(?, t.status)", id, expectedVersion,
+                title, description, status == null ? null : status.getCode());
+    }
+
+    @Override
+    @Transactional
+    public Optional<TaskChange> updateStatusIfVersionMatches(Long id, Long expectedVersion, TaskStatus status) {
+        return update("status = ?", id, expectedVersion, status.getCode());
+    }
+
+    @Override
+    @Transactional
+    public Optional<TaskChange> deleteIfVersionMatches(Long id, Long expectedVersion) {
+        List<Object> args = new ArrayList<>(List.of(id));
+        String condition = "t.id = ?" + versionCondition(expectedVersion, args);
+
+        if (isPostgres()) {
+            String sql = "delete from tasks t where " + condition + " returning " + TASK_COLUMNS;
+            return jdbcTemplate.query(sql, (row, rowNum) -> mapTask(row), args.toArray()).stream()
+                    .findFirst()
+                    .map(task -> new TaskChange(task.getStatus(), task));
+        }
+
+        Optional<Task> previous = lockRow(condition, args);
+        previous.ifPresent(task -> jdbcTemplate.update("delete from tasks where id = ?", id));
+        return previous.map(task -> new TaskChange(task.getStatus(), task));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<TaskFields> findFields(Specification<Task> spec, Sort sort, int limit, Set<TaskField> fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Task> root = query.from(Task.class);
+
+        List<Selection<?>> selections = new ArrayList<>(List.of(
+                root.get("id").alias("id"),
+                root.get("createdDate").alias("createdDate"),
+                root.get("version").alias("version")));
+        for (TaskField field : fields) {
+            if (field != TaskField.ID && field != TaskField.CREATED_DATE && field != TaskField.VERSION) {
+                selections.add(root.get(field.getProperty()).alias(field.getProperty()));
+            }
+        }
+        query.multiselect(selections);
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, cb));
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultStream()
+                .map(row -> {
+                    Map<String, Object> values = new LinkedHashMap<>();
+                    fields.forEach(field -> values.put(field.getProperty(), row.get(field.getProperty())));
+                    return new TaskFields(row.get("id", Long.class), row.get("createdDate", LocalDateTime.class),
+                            row.get("version", Long.class), values);
+                })
+                .toList();
+    }
+
+    private Optional<TaskChange> update(String assignments, Long id, Long expectedVersion, Object... values) {
+        List<Object> conditionArgs = new ArrayList<>(List.of(id));
+        String condition = "t.id = ?" + versionCondition(expectedVersion, conditionArgs);
+
+        if (isPostgres()) {
+            List<Object> args = new ArrayList<>(conditionArgs);
+            args.addAll(Arrays.asList(values));
+            String sql = "with previous as (select t.id as previous_id, t.status as previous_status"
+                    + " from tasks t where " + condition + " for update)"
+                    + " update tasks t set " + assignments + ", version = t.version + 1"
+                    + " from previous where t.id = previous.previous_id"
+                    + " returning " + TASK_COLUMNS + ", previous.previous_status";
+            return jdbcTemplate.query(sql,
+                            (row, rowNum) -> new TaskChange(TaskStatus.fromCode(row.getString("previous_status")), mapTask(row)),
+                            args.toArray()).stream()
+                    .findFirst();
+        }
+
+        Optional<Task> previous = lockRow(condition, conditionArgs);
+        if (previous.isEmpty()) {
+            return Optional.empty();
+        }
+        List<Object> args = new ArrayList<>(Arrays.asList(values));
+        args.add(id);
+        String sql = "update tasks t set " + assignments + ", version = t.version + 1 where t.id = ?";
+        jdbcTemplate.update(sql, args.toArray());
+        Task updated = jdbcTemplate.queryForObject(
+                "select " + TASK_COLUMNS + " from tasks t where t.id = ?", (row, rowNum) -> mapTask(row), id);
+        return Optional.of(new TaskChange(previous.get().getStatus(), updated));
+    }
+
+    private Optional<Task> lockRow(String condition, List<Object> args) {
+        String sql = "select " + TASK_COLUMNS + " from tasks t where " + condition + " for update";
+        return jdbcTemplate.query(sql, (row, rowNum) -> mapTask(row), args.toArray()).stream().findFirst();
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    private static String versionCondition(Long expectedVersion, List<Object> args) {
+        if (expectedVersion == null) {
+            return "";
+        }
+        args.add(expectedVersion);
+        return " and t.version = ?";
+    }
+
+    private static Task mapTask(ResultSet row) throws SQLException {
+        return new Task(
+                row.getLong("id"),
+                row.getString("title"),
+                row.getString("description"),
+                TaskStatus.fromCode(row.getString("status")),
+                row.getObject("created_date", LocalDateTime.class),
+                row.getLong("version"));
+    }
+}
@@ -1,58 +1,333 @@
 package com.mongs.springazuredemo;
 
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.mongs.springazuredemo.BatchItemResult.Status.*;
 
 @Service
 @RequiredArgsConstructor
 public class TaskService {
+    public static final String TASK_CACHE = "tasks";
+
     private final TaskRepository taskRepository;
+    private final EntityManager entityManager;
+    private final Validator validator;
+    private final TaskStatistics taskStatistics;
+    private final ObjectProvider<TaskIngestPipeline> ingestPipeline;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
 
-    public List<Task> getAllTasks() {
-        return taskRepository.findAll();
+    /**
+     * Returns one keyset page of filtered tasks ordered by (createdDate, id)
+     *
+     * @param filter The status/date filters and sort direction
+     * @param cursor The cursor returned with the previous page, or null for the first page
+     * @param limit  The maximum number of tasks to return
+     * @return The page and the cursor of the next one
+     */
+    public TaskPage getAllTasks(TaskFilter filter, String cursor, int limit) {
+        // fetch one extra row to find out whether another page follows
+        List<Task> tasks = taskRepository.findBy(pageSpecification(filter, cursor),
+                query -> query.sortBy(pageSort(filter)).limit(limit + 1).all());
+
+        if (tasks.size() <= limit) {
+            return new TaskPage(tasks, null);
+        }
+        List<Task> items = tasks.subList(0, limit);
+        return new TaskPage(items, TaskCursor.of(items.get(limit - 1)).encode());
     }
 
-    public Optional<Task> getTaskById(Long id) {
-        return taskRepository.findById(id);
+    /**
+     * Same page as getAllTasks, selecting only the requested columns
+     *
+     * @param fields The task fields to return
+     * @return The page of sparse tasks and the cursor of the next one
+     */
+    public TaskFieldsPage getAllTaskFields(TaskFilter filter, String cursor, int limit, Set<TaskField> fields) {
+        List<TaskFields> tasks = taskRepository.findFields(pageSpecification(filter, cursor), pageSort(filter), limit + 1, fields);
+
+        if (tasks.size() <= limit) {
+            return new TaskFieldsPage(tasks, null);
+        }
+        List<TaskFields> items = tasks.subList(0, limit);
+        return new TaskFieldsPage(items, TaskCursor.of(items.get(limit - 1)).encode());
     }
 
-    public Task createTask(Task task) {
-        return taskRepository.save(task);
+    /**
+     * Entity tag of the page getAllTasks or getAllTaskFields returns for the same arguments,
+     * read from the id and version columns of its rows alone so that a matching If-None-Match
+     * is answered before the page is loaded
+     *
+     * @param fields The selected fields of a sparse page, or null for full tasks
+     * @return A strong entity tag for the page
+     */
+    public String getPageETag(TaskFilter filter, String cursor, int limit, Set<TaskField> fields) {
+        List<TaskFields> window = taskRepository.findFields(pageSpecification(filter, cursor), pageSort(filter),
+                limit + 1, EnumSet.noneOf(TaskField.class));
+        return TaskETags.of(window, fields);
     }
 
-    public Task updateTask(Long id, Task taskDetails) {
-        Task task = taskRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Task not found with id: " + id));
+    private static Specification<Task> pageSpecification(TaskFilter filter, String cursor) {
+        TaskCursor after = cursor == null || cursor.isEmpty() ? null : TaskCursor.decode(cursor);
+        return TaskSpecifications.matching(filter)
+                .and(TaskSpecifications.after(after, filter.direction().isDescending()));
+    }
 
-        task.setTitle(taskDetails.getTitle());
-        task.setDescription(taskDetails.getDescription());
-        task.setStatus(taskDetails.getStatus());
+    private static Sort pageSort(TaskFilter filter) {
+        return Sort.by(filter.direction(), "createdDate", "id");
+    }
+
+    /**
+     * Streams every task to the consumer without holding the table in memory
+     *
+     * @param consumer Receives each task, detached from the persistence context
+     */
+    @Transactional(readOnly = true)
+    public void streamAllTasks(Consumer<Task> consumer) {
+        try (Stream<Task> tasks = taskRepository.streamAll()) {
+            tasks.forEach(task -> {
+                entityManager.detach(task);
+                consumer.accept(task);
+            });
+        }
+    }
 
-        return taskRepository.save(task);
+    // a replica that has not caught up yet misses a task created moments ago, so a miss is asked
+    // again of the primary before it turns into a 404. Misses are rare enough to pay the second query
+    @Cacheable(cacheNames = TASK_CACHE, key = "#id", unless = "#result == null")
+    public Optional<Task> getTaskById(Long id) {
+        Optional<Task> task = taskRepository.findById(id);
+        return task.isPresent() ? task : ReplicaDataSource.onPrimary(() -> taskRepository.findById(id));
     }
 
-    public void deleteTask(Long id) {
-        Task task = taskRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Task not found with id: " + id));
+    /**
+     * Creates a task, through the group-commit pipeline when app.tasks.ingest.enabled is set
+     *
+     * @param task The task to create
+     * @return The saved task
+     * @throws TaskIngestRejectedException if the ingest pipeline is saturated
+     */
+    @CachePut(cacheNames = TASK_CACHE, key = "#result.id")
+    public Task createTask(Task task) {
+        TaskIngestPipeline pipeline = ingestPipeline.getIfAvailable();
+        if (pipeline != null) {
+            return pipeline.create(task);
+        }
+        task.setId(null);
+        task.setVersion(null);
+        Task created = taskRepository.save(task);
+        taskStatistics.recordCreated(created);
+        return created;
+    }
 
-        taskRepository.delete(task);
+    /**
+     * Updates a task with a single conditional UPDATE
+     *
+     * @param id              The ID of the task to update
+     * @param taskDetails     The new task details
+     * @param expectedVersion The version the caller last saw, or null to update any version
+     * @return The updated Task
+     * @throws ResourceNotFoundException   if task not found
+     * @throws PreconditionFailedException if the task has moved past the expected version
+     */
+    @CachePut(cacheNames = TASK_CACHE, key = "#id")
+    public Task updateTask(Long id, Task taskDetails, Long expectedVersion) {
+        TaskChange change = taskRepository.updateIfVersionMatches(id, expectedVersion,
+                        taskDetails.getTitle(), taskDetails.getDescription(), taskDetails.getStatus())
+                .orElseThrow(() -> writeFailure(id, expectedVersion));
+        taskStatistics.recordStatusChange(change.previousStatus(), change.task().getStatus());
+        return change.task();
+    }
+
+    /**
+     * Deletes a task with a single conditional DELETE
+     *
+     * @param id              The ID of the task to delete
+     * @param expectedVersion The version the caller last saw, or null to delete any version
+     * @throws ResourceNotFoundException   if task not found
+     * @throws PreconditionFailedException if the task has moved past the expected version
+     */
+    @CacheEvict(cacheNames = TASK_CACHE, key = "#id")
+    public void deleteTask(Long id, Long expectedVersion) {
+        TaskChange change = taskRepository.deleteIfVersionMatches(id, expectedVersion)
+                .orElseThrow(() -> writeFailure(id, expectedVersion));
+        taskStatistics.recordDeleted(change.task());
     }
 
     /**
      * Marks a task as completed
      *
-     * @param id The ID of the task to mark as completed
+     * @param id              The ID of the task to mark as completed
+     * @param expectedVersion The version the caller last saw, or null to complete any version
      * @return The updated Task
-     * @throws ResourceNotFoundException if task not found
+     * @throws ResourceNotFoundException   if task not found
+     * @throws PreconditionFailedException if the task has moved past the expected version
+     */
+    @CachePut(cacheNames = TASK_CACHE, key = "#id")
+    public Task markTaskAsCompleted(Long id, Long expectedVersion) {
+        TaskChange change = taskRepository.updateStatusIfVersionMatches(id, expectedVersion, TaskStatus.COMPLETED)
+                .orElseThrow(() -> writeFailure(id, expectedVersion));
+        taskStatistics.recordStatusChange(change.previousStatus(), TaskStatus.COMPLETED);
+        return change.task();
+    }
+
+    // only reached when the conditional write matched no row, so the extra lookup stays off the happy path.
+    // The write's transaction has already ended here, so without onPrimary existsById would open its own
+    // read-only transaction on a replica, and a lagging replica could still miss a task the caller just created
+    private RuntimeException writeFailure(Long id, Long expectedVersion) {
+        if (expectedVersion != null && ReplicaDataSource.onPrimary(() -> taskRepository.existsById(id))) {
+            return new PreconditionFailedException("Task " + id + " no longer matches version " + expectedVersion);
+        }
+        return new ResourceNotFoundException("Task not found with id: " + id);
+    }
+
+    /**
+     * Creates many tasks in one transaction, flushing them as JDBC batches
+     *
+     * @param tasks The tasks to create, invalid ones are reported and skipped. They are copied,
+     *              the caller's objects are left unchanged
+     * @return One result per input task, in input order
+     */
+    @Transactional
+    public List<BatchItemResult> createTasks(List<Task> tasks) {
+        List<BatchItemResult> results = new ArrayList<>(tasks.size());
+        int pending = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            List<String> errors = validate(task);
+            if (!errors.isEmpty()) {
+                results.add(BatchItemResult.failure(i, INVALID, errors));
+                continue;
+            }
+            Task created = taskRepository.save(new Task(null, task.getTitle(), task.getDescription(),
+                    task.getStatus(), null, null));
+            taskStatistics.recordCreated(created);
+            results.add(BatchItemResult.success(i, CREATED, created));
+            if (++pending % batchSize == 0) {
+                flushAndClear();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Updates many tasks in one transaction, loading them with a single query
+     * and writing the changes back as JDBC batches
+     *
+     * @param tasks The new task details, each must carry the id of the task to update
+     * @return One result per input task, in input order
+     */
+    @Transactional
+    @CacheEvict(cacheNames = TASK_CACHE, allEntries = true)
+    public List<BatchItemResult> updateTasks(List<Task> tasks) {
+        Set<Long> ids = tasks.stream()
+                .filter(Objects::nonNull)
+                .map(Task::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, Task> existing = taskRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Task::getId, Function.identity()));
+
+        List<BatchItemResult> results = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            Task taskDetails = tasks.get(i);
+            List<String> errors = new ArrayList<>(validate(taskDetails));
+            if (taskDetails != null && taskDetails.getId() == null) {
+                errors.add("Id is mandatory");
+            }
+            if (!errors.isEmpty()) {
+                results.add(BatchItemResult.failure(i, INVALID, errors));
+                continue;
+            }
+            Task task = existing.get(taskDetails.getId());
+            if (task == null) {
+                results.add(BatchItemResult.failure(i, NOT_FOUND, List.of("Task not found with id: " + taskDetails.getId())));
+                continue;
+            }
+            task.setTitle(taskDetails.getTitle());
+            task.setDescription(taskDetails.getDescription());
+            if (taskDetails.getStatus() != null) {
+                taskStatistics.recordStatusChange(task.getStatus(), taskDetails.getStatus());
+                task.setStatus(taskDetails.getStatus());
+            }
+            results.add(BatchItemResult.success(i, UPDATED, task));
+        }
+        entityManager.flush();
+        return results;
+    }
+
+    /**
+     * Marks many tasks as completed in one transaction
+     *
+     * @param ids The IDs of the tasks to mark as completed
+     * @return One result per input id, in input order
+     */
+    @Transactional
+    @CacheEvict(cacheNames = TASK_CACHE, allEntries = true)
+    public List<BatchItemResult> markTasksAsCompleted(List<Long> ids) {
+        Map<Long, Task> existing = taskRepository.findAllById(ids.stream().filter(Objects::nonNull).collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(Task::getId, Function.identity()));
+
+        List<BatchItemResult> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Task task = existing.get(ids.get(i));
+            if (task == null) {
+                results.add(BatchItemResult.failure(i, NOT_FOUND, List.of("Task not found with id: " + ids.get(i))));
+                continue;
+            }
+            taskStatistics.recordStatusChange(task.getStatus(), TaskStatus.COMPLETED);
+            task.setStatus(TaskStatus.COMPLETED);
+            results.add(BatchItemResult.success(i, COMPLETED, task));
+        }
+        entityManager.flush();
+        return results;
+    }
+
+    /**
+     * Per-status and per-day task counts, served from memory
+     *
+     * @return The current counters
      */
-    public Task markTaskAsCompleted(Long id) {
-        Task task = getTaskById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Task not found with id: " + id));
+    public Map<String, Object> getStats() {
+        return taskStatistics.snapshot();
+    }
+
+    private List<String> validate(Task task) {
+        if (task == null) {
+            return List.of("Task is mandatory");
+        }
+        return validator.validate(task).stream()
+                .map(ConstraintViolation::getMessage)
+                .toList();
+    }
 
-        task.setStatus("completed");
-        return taskRepository.save(task);
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
     }
 }
@@ -0,0 +1,54 @@
+package com.mongs.springazuredemo;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+
+/**
+ * Query predicates for the task listing, shaped to match the
+ * (status, created_date, id) and (created_date, id) indexes
+ */
+public final class TaskSpecifications {
+
+    private TaskSpecifications() {
+    }
+
+    public static Specification<Task> matching(TaskFilter filter) {
+        return Specification.where(hasStatus(filter.status()))
+                .and(createdFrom(filter.createdFrom()))
+                .and(createdBefore(filter.createdTo()));
+    }
+
+    public static Specification<Task> hasStatus(TaskStatus status) {
+        return (root, query, cb) -> status == null ? null : cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<Task> createdFrom(LocalDateTime from) {
+        return (root, query, cb) -> from == null ? null : cb.greaterThanOrEqualTo(root.get("createdDate"), from);
+    }
+
+    public static Specification<Task> createdBefore(LocalDateTime to) {
+        return (root, query, cb) -> to == null ? null : cb.lessThan(root.get("createdDate"), to);
+    }
+
+    /**
+     * Rows strictly after the cursor position in the (createdDate, id) keyset order
+     */
+    public static Specification<Task> after(TaskCursor cursor, boolean descending) {
+        return (root, query, cb) -> {
+            if (cursor == null) {
+                return null;
+            }
+            if (descending) {
+                return cb.or(
+                        cb.lessThan(root.get("createdDate"), cursor.createdDate()),
+                        cb.and(cb.equal(root.get("createdDate"), cursor.createdDate()),
+                                cb.lessThan(root.get("id"), cursor.id())));
+            }
+            return cb.or(
+                    cb.greaterThan(root.get("createdDate"), cursor.createdDate()),
+                    cb.and(cb.equal(root.get("createdDate"), cursor.createdDate()),
+                            cb.greaterThan(root.get("id"), cursor.id())));
+        };
+    }
+}
@@ -0,0 +1,152 @@
+package com.mongs.springazuredemo;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory per-status and per-day task counters, updated incrementally by
+ * {@link TaskService} and periodically reconciled against the database to correct drift
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TaskStatistics {
+
+    private final EntityManager entityManager;
+
+    private final Map<TaskStatus, LongAdder> statusCounts = new EnumMap<>(TaskStatus.class);
+    private final ConcurrentMap<LocalDate, LongAdder> dailyCreated = new ConcurrentHashMap<>();
+    private volatile Instant reconciledAt;
+
+    @Value("${app.tasks.stats.days:30}")
+    private int days;
+
+    {
+        for (TaskStatus status : TaskStatus.values()) {
+            statusCounts.put(status, new LongAdder());
+        }
+    }
+
+    public void recordCreated(Task task) {
+        afterCommit(() -> {
+            statusCounts.get(task.getStatus()).increment();
+            dailyCounter(task.getCreatedDate()).increment();
+        });
+    }
+
+    public void recordDeleted(Task task) {
+        afterCommit(() -> {
+            statusCounts.get(task.getStatus()).decrement();
+            dailyCounter(task.getCreatedDate()).decrement();
+        });
+    }
+
+    public void recordStatusChange(TaskStatus from, TaskStatus to) {
+        if (from == to) {
+            return;
+        }
+        afterCommit(() -> {
+            statusCounts.get(from).decrement();
+            statusCounts.get(to).increment();
+        });
+    }
+
+    /**
+     * @return Current counts per status and per creation day, without touching the database
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Long> byStatus = new LinkedHashMap<>();
+        statusCounts.forEach((status, count) -> byStatus.put(status.getValue(), count.sum()));
+
+        LocalDate firstDay = LocalDate.now().minusDays(days - 1L);
+        Map<LocalDate, Long> createdPerDay = new TreeMap<>();
+        dailyCreated.forEach((day, count) -> {
+            if (!day.isBefore(firstDay)) {
+                createdPerDay.put(day, count.sum());
+            }
+        });
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("byStatus", byStatus);
+        body.put("createdPerDay", createdPerDay);
+        body.put("reconciledAt", reconciledAt);
+        return body;
+    }
+
+    /**
+     * Replaces the counters with GROUP BY results. Writes that land between the query
+     * and the reset are off by a little until the next run. Not read-only, so it counts
+     * on the primary rather than a replica that may lag behind it.
+     */
+    @Scheduled(initialDelayString = "${app.tasks.stats.initial-delay:PT0S}",
+            fixedDelayString = "${app.tasks.stats.reconcile-interval:PT5M}")
+    @Transactional
+    public void reconcile() {
+        List<Object[]> byStatus = entityManager.createQuery(
+                        "select t.status, count(t) from Task t group by t.status", Object[].class)
+                .getResultList();
+        LocalDateTime from = LocalDate.now().minusDays(days - 1L).atStartOfDay();
+        List<Object[]> byDay = entityManager.createQuery("""
+                        select cast(t.createdDate as LocalDate), count(t) from Task t
+                        where t.createdDate >= :from
+                        group by cast(t.createdDate as LocalDate)
+                        """, Object[].class)
+                .setParameter("from", from)
+                .getResultList();
+
+        Map<TaskStatus, Long> statusTotals = new EnumMap<>(TaskStatus.class);
+        byStatus.forEach(row -> statusTotals.put((TaskStatus) row[0], (Long) row[1]));
+        statusCounts.forEach((status, count) -> reset(count, statusTotals.getOrDefault(status, 0L)));
+
+        dailyCreated.clear();
+        byDay.forEach(row -> reset(dailyCounter((LocalDate) row[0]), (Long) row[1]));
+
+        reconciledAt = Instant.now();
+        log.debug("Reconciled task statistics: {}", statusTotals);
+    }
+
+    private LongAdder dailyCounter(LocalDateTime createdDate) {
+        return dailyCounter(createdDate == null ? LocalDate.now() : createdDate.toLocalDate());
+    }
+
+    private LongAdder dailyCounter(LocalDate day) {
+        return dailyCreated.computeIfAbsent(day, d -> new LongAdder());
+    }
+
+    private static void reset(LongAdder adder, long value) {
+        adder.add(value - adder.sum());
+    }
+
+    // counters only move once the write is durable, so rolled-back batches leave them untouched
+    private static void afterCommit(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package com.mongs.springazuredemo;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.Arrays;
+
+/**
+ * Task lifecycle state, exposed in JSON by its lower-case value and stored as a one-character code
+ */
+public enum TaskStatus {
+    PENDING("pending", "P"),
+    IN_PROGRESS("in_progress", "I"),
+    COMPLETED("completed", "C");
+
+    private final String value;
+    private final String code;
+
+    TaskStatus(String value, String code) {
+        this.value = value;
+        this.code = code;
+    }
+
+    @JsonValue
+    public String getValue() {
+        return value;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is not a known status
+     */
+    @JsonCreator
+    public static TaskStatus fromValue(String value) {
+        return Arrays.stream(values())
+                .filter(status -> status.value.equalsIgnoreCase(value))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown task status: " + value));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the code is not a known status code
+     */
+    public static TaskStatus fromCode(String code) {
+        return Arrays.stream(values())
+                .filter(status -> status.code.equals(code))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown task status code: " + code));
+    }
+
+    @Converter(autoApply = true)
+    public static class CodeConverter implements AttributeConverter<TaskStatus, String> {
+
+        @Override
+        public String convertToDatabaseColumn(TaskStatus status) {
+            return status == null ? null : status.code;
+        }
+
+        @Override
+        public TaskStatus convertToEntityAttribute(String code) {
+            return code == null ? null : fromCode(code);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.mongs.springazuredemo.file;
 
+import com.azure.storage.blob.BlobServiceAsyncClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.azure.storage.common.StorageSharedKeyCredential;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,12 +15,32 @@ public class AzureBlobConfig {
     @Bean
     public BlobServiceClient blobServiceClient(
             @Value("${spring.cloud.azure.storage.blob.account-name}") String accountName,
-            @Value("${spring.cloud.azure.storage.blob.account-key}") String accountKey) {
-        String endpoint = String.format("https://%s.blob.core.windows.net", accountName);
+            @Value("${spring.cloud.azure.storage.blob.account-key}") String accountKey,
+            @Value("${spring.cloud.azure.storage.blob.endpoint:}") String configuredEndpoint,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        return builder(accountName, accountKey, configuredEndpoint, meterRegistry).buildClient();
+    }
+
+    @Bean
+    public BlobServiceAsyncClient blobServiceAsyncClient(
+            @Value("${spring.cloud.azure.storage.blob.account-name}") String accountName,
+            @Value("${spring.cloud.azure.storage.blob.account-key}") String accountKey,
+            @Value("${spring.cloud.azure.storage.blob.endpoint:}") String configuredEndpoint,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        return builder(accountName, accountKey, configuredEndpoint, meterRegistry).buildAsyncClient();
+    }
+
+    private static BlobServiceClientBuilder builder(String accountName, String accountKey, String configuredEndpoint,
+                                                    ObjectProvider<MeterRegistry> meterRegistry) {
+        // an explicit endpoint points the client at Azurite or another emulator
+        String endpoint = configuredEndpoint.isBlank()
+                ? String.format("https://%s.blob.core.windows.net", accountName)
+                : configuredEndpoint;
         StorageSharedKeyCredential credential = new StorageSharedKeyCredential(accountName, accountKey);
-        return new BlobServiceClientBuilder()
+        BlobServiceClientBuilder builder = new BlobServiceClientBuilder()
                 .endpoint(endpoint)
-                .credential(credential)
-                .buildClient();
+                .credential(credential);
+        meterRegistry.ifAvailable(registry -> builder.addPolicy(new BlobMetricsPolicy(registry)));
+        return builder;
     }
 }
\ No newline at end of file
@@ -1,24 +1,88 @@
 package com.mongs.springazuredemo.file;
 
+import com.azure.core.util.BinaryData;
+import com.azure.core.util.Context;
+import com.azure.core.util.polling.LongRunningOperationStatus;
+import com.azure.core.util.polling.PollResponse;
+import com.azure.core.util.polling.SyncPoller;
 import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.BlobCopyInfo;
+import com.azure.storage.blob.models.BlobDownloadHeaders;
 import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import com.azure.storage.blob.sas.BlobSasPermission;
+import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import com.mongs.springazuredemo.ResourceNotFoundException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.util.UUID;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @RequiredArgsConstructor
-public class AzureBlobService {
+public class AzureBlobService implements MeterBinder {
 
     private final BlobServiceClient blobServiceClient;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Value("${spring.cloud.azure.storage.blob.container-name}")
     private String containerName;
+
+    @Value("${app.azure.blob.upload.block-size:4MB}")
+    private DataSize uploadBlockSize;
+
+    @Value("${app.azure.blob.upload.max-concurrency:4}")
+    private int uploadMaxConcurrency;
+
+    @Value("${app.azure.blob.upload.max-single-upload-size:4MB}")
+    private DataSize uploadMaxSingleUploadSize;
+
+    @Value("${app.azure.blob.upload.content-addressed:false}")
+    private boolean contentAddressed;
+
+    @Value("${app.azure.blob.sas.upload-ttl:10m}")
+    private Duration sasUploadTtl;
+
+    @Value("${app.azure.blob.sas.download-ttl:5m}")
+    private Duration sasDownloadTtl;
+
+    @Value("${app.azure.blob.sas.max-upload-size:64MB}")
+    private DataSize sasMaxUploadSize;
+
+    @Value("${app.azure.blob.sas.complete-timeout:30s}")
+    private Duration sasCompleteTimeout;
+
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
     /**
      * upload image to Azure Blob Storage
      * @param file The image file to upload
@@ -29,28 +93,47 @@ public class AzureBlobService {
             throw new IllegalArgumentException("File cannot be null or empty");
         }
         try{
-            //generate a unique file name
+            //generate a unique file name, or one derived from the content in content-addressed mode
             String originalFilename = file.getOriginalFilename();
-            String extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-            String uniqueFileName = UUID.randomUUID().toString() + extension;
+            String uniqueFileName = contentAddressed
+                    ? sha256(file) + FileRules.getExtension(originalFilename).toLowerCase()
+                    : FileRules.uniqueFileName(originalFilename);
 
             //get the blob client
-            BlobClient client = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(uniqueFileName);
+            BlobClient client = getBlobClient(uniqueFileName);
+            if (contentAddressed) {
+                uploads.increment();
+                //the same content was uploaded before, nothing to transfer
+                if (client.exists()) {
+                    return deduplicated(client, file);
+                }
+            }
             //set the content type
             BlobHttpHeaders headers = new BlobHttpHeaders()
                     .setContentType(file.getContentType());
+            //metadata values must be ASCII, so keep the original name URL-encoded
+            Map<String, String> metadata = Map.of(
+                    "originalFilename", URLEncoder.encode(originalFilename, StandardCharsets.UTF_8));
 
-            //upload the file now
-
-
-            client.upload(
-                    file.getInputStream(),
-                    file.getSize(),
-                    true
-            );
-            client.setHttpHeaders(headers);
+            //upload the file now, large files are staged as parallel blocks and the
+            //block list is committed together with the headers and metadata
+            BlobParallelUploadOptions options = new BlobParallelUploadOptions(file.getInputStream())
+                    .setParallelTransferOptions(parallelTransferOptions())
+                    .setHeaders(headers)
+                    .setMetadata(metadata);
+            if (contentAddressed) {
+                //never overwrite, a concurrent upload of the same content may have won the race
+                options.setRequestConditions(new BlobRequestConditions().setIfNoneMatch("*"));
+            }
+            try {
+                client.uploadWithResponse(options, null, Context.NONE);
+            } catch (BlobStorageException e) {
+                if (contentAddressed && (e.getStatusCode() == 409 || e.getStatusCode() == 412)) {
+                    return deduplicated(client, file);
+                }
+                throw e;
+            }
+            eventPublisher.publishEvent(new BlobUploadedEvent(uniqueFileName, file.getContentType()));
             return client.getBlobUrl();
         } catch (IOException e) {
             throw new RuntimeException("Failed to upload file to Azure Blob Storage:", e);
@@ -58,65 +141,239 @@ public class AzureBlobService {
     }
 
     /**
-     *  Retrieve image from Azure Blob Storage
-     * @param fileName The name of the file to retrieve
-     * @return byte[] The image as a byte array
+     * Sign a URL the client can PUT a new image to, straight into the container.
+     * The SAS only allows creating this one blob, so it cannot overwrite or read anything.
+     * The blob is staged under pending/ and is neither served nor signed for download until
+     * completeUpload moves it to the returned name; a storage lifecycle rule deletes staged
+     * uploads that are never completed (see .github/workflows/azure-deploy.yml).
+     * Always uses a generated name, the content is never seen here to derive a content-addressed one.
+     * @param originalFilename The name of the file the client is going to upload
+     * @param contentType The content type of the file, or null to derive it from the name
+     * @return SignedUrl with the headers the PUT has to carry
      */
+    public SignedUrl createUploadUrl(String originalFilename, String contentType) {
+        String uniqueFileName = FileRules.uniqueFileName(originalFilename);
+        String blobContentType = contentType == null || contentType.isEmpty()
+                ? FileRules.getMediaTypeFromFileName(originalFilename)
+                : contentType;
+        OffsetDateTime expiresAt = OffsetDateTime.now().plus(sasUploadTtl);
+        BlobClient client = getBlobClient(FileRules.PENDING_UPLOADS + uniqueFileName);
+        String sas = client.generateSas(
+                new BlobServiceSasSignatureValues(expiresAt, new BlobSasPermission().setCreatePermission(true)));
+        //the same headers and metadata uploadImage sets, sent by the client with the PUT
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("x-ms-blob-type", "BlockBlob");
+        headers.put("x-ms-blob-content-type", blobContentType);
+        headers.put("x-ms-meta-originalFilename", URLEncoder.encode(originalFilename, StandardCharsets.UTF_8));
+        return new SignedUrl(uniqueFileName, client.getBlobUrl() + "?" + sas, "PUT", headers, expiresAt);
+    }
 
-    public byte[] getImage(String fileName) {
-        if (fileName == null || fileName.isEmpty()) {
-            throw new IllegalArgumentException("File name cannot be null or empty");
+    /**
+     * Verify a blob the client uploaded through a signed URL, move it out of pending/ and
+     * register it like a regular upload
+     * @param fileName The blob name returned by createUploadUrl
+     * @return String url of uploaded image
+     * @throws ResourceNotFoundException if nothing was uploaded
+     * @throws IllegalArgumentException if the name was never issued, or the upload was empty
+     *                                  or too large, in which case the staged blob is deleted
+     */
+    public String completeUpload(String fileName) {
+        if (!FileRules.isUniqueFileName(fileName)) {
+            throw new IllegalArgumentException("File name was not issued for a signed upload");
+        }
+        BlobProperties properties = getProperties(FileRules.PENDING_UPLOADS + fileName);
+        BlobClient pending = getBlobClient(FileRules.PENDING_UPLOADS + fileName);
+        if (properties.getBlobSize() == 0 || properties.getBlobSize() > sasMaxUploadSize.toBytes()) {
+            pending.deleteIfExists();
+            throw new IllegalArgumentException(properties.getBlobSize() == 0
+                    ? "File cannot be null or empty"
+                    : "File exceeds the maximum upload size of " + sasMaxUploadSize);
+        }
+        //whatever content type the client sent, serve what the extension says like downloads do,
+        //set before the copy so the blob is never readable under the client's headers
+        String contentType = FileRules.getMediaTypeFromFileName(fileName);
+        pending.setHttpHeaders(new BlobHttpHeaders().setContentType(contentType));
+        //a copy inside the account completes on the server without transferring the content
+        BlobClient client = getBlobClient(fileName);
+        SyncPoller<BlobCopyInfo, Void> poller = client.beginCopy(pending.getBlobUrl(), Duration.ofSeconds(1));
+        PollResponse<BlobCopyInfo> copy;
+        try {
+            copy = poller.waitForCompletion(sasCompleteTimeout);
+        } catch (RuntimeException e) {
+            abortCopy(poller, client);
+            throw new RuntimeException("Timed out completing upload " + fileName + " after " + sasCompleteTimeout, e);
         }
+        if (copy.getStatus() != LongRunningOperationStatus.SUCCESSFULLY_COMPLETED) {
+            abortCopy(poller, client);
+            throw new RuntimeException("Failed to complete upload " + fileName + ": " + copy.getStatus());
+        }
+        pending.deleteIfExists();
+        eventPublisher.publishEvent(new BlobUploadedEvent(fileName, contentType));
+        return client.getBlobUrl();
+    }
 
-        try{
-            //get the blob client
-            BlobClient client = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(fileName);
-            if (!client.exists()){
-                throw new RuntimeException("File not found in Azure Blob Storage:" + fileName);
-            }
+    //the staged blob stays in pending/ so completing the upload can be retried
+    private void abortCopy(SyncPoller<BlobCopyInfo, Void> poller, BlobClient client) {
+        try {
+            poller.cancelOperation();
+        } catch (RuntimeException e) {
+            //the copy already ended, there is nothing to abort
+        }
+        client.deleteIfExists();
+    }
 
-            return client.downloadContent().toBytes();
-        } catch (Exception e){
-            throw new RuntimeException("Failed to download file from Azure Blob Storage:", e);
+    /**
+     * Sign a read-only URL the client can GET a blob from, straight out of the container
+     * @param fileName The name of the blob
+     * @return SignedUrl of the blob
+     * @throws ResourceNotFoundException if there is no such blob or its upload was not completed
+     */
+    public SignedUrl createDownloadUrl(String fileName) {
+        if (fileName != null && fileName.startsWith(FileRules.PENDING_UPLOADS)) {
+            throw new ResourceNotFoundException("File not found in Azure Blob Storage:" + fileName);
         }
+        getProperties(fileName);
+        OffsetDateTime expiresAt = OffsetDateTime.now().plus(sasDownloadTtl);
+        BlobClient client = getBlobClient(fileName);
+        String sas = client.generateSas(
+                new BlobServiceSasSignatureValues(expiresAt, new BlobSasPermission().setReadPermission(true)));
+        return new SignedUrl(fileName, client.getBlobUrl() + "?" + sas, "GET", Map.of(), expiresAt);
+    }
+
+    /**
+     * Upload content generated by the application, such as image variants
+     * @param blobName The name of the blob to write
+     * @param content The bytes to store
+     * @param contentType The content type to set on the blob
+     */
+    public void upload(String blobName, byte[] content, String contentType) {
+        getBlobClient(blobName).uploadWithResponse(
+                new BlobParallelUploadOptions(BinaryData.fromBytes(content))
+                        .setHeaders(new BlobHttpHeaders().setContentType(contentType)),
+                null,
+                Context.NONE
+        );
     }
 
-    public byte[] getImageByUrl(String url) {
-        if (url == null || url.isEmpty()) {
-            throw new IllegalArgumentException("File URL cannot be null or empty");
+    /**
+     * Check whether a blob exists
+     * @param fileName The name of the blob
+     * @return true if the blob exists
+     */
+    public boolean exists(String fileName) {
+        return getBlobClient(fileName).exists();
+    }
+
+    /**
+     * Publishes the content-addressed upload counters: blob.uploads, blob.uploads.deduplicated
+     * for the uploads that matched a stored blob, of which the dedup ratio is derived, and
+     * blob.uploads.saved counting the bytes those did not transfer.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("blob.uploads", uploads, LongAdder::sum)
+                .description("Content-addressed uploads received")
+                .register(registry);
+        FunctionCounter.builder("blob.uploads.deduplicated", deduplicated, LongAdder::sum)
+                .description("Content-addressed uploads whose content was already stored")
+                .register(registry);
+        FunctionCounter.builder("blob.uploads.saved", bytesSaved, LongAdder::sum)
+                .description("Bytes deduplicated uploads did not transfer")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    private String deduplicated(BlobClient client, MultipartFile file) {
+        deduplicated.increment();
+        bytesSaved.add(file.getSize());
+        return client.getBlobUrl();
+    }
+
+    // reads the multipart content once through the digest, it is spooled locally so nothing is held on the heap
+    private static String sha256(MultipartFile file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private ParallelTransferOptions parallelTransferOptions() {
+        return new ParallelTransferOptions()
+                .setBlockSizeLong(uploadBlockSize.toBytes())
+                .setMaxConcurrency(uploadMaxConcurrency)
+                .setMaxSingleUploadSizeLong(uploadMaxSingleUploadSize.toBytes());
+    }
+
+    /**
+     * Fetch the properties (size, content type, etag) of a blob in one call
+     * @param fileName The name of the blob
+     * @return BlobProperties of the blob
+     */
+    public BlobProperties getProperties(String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            throw new IllegalArgumentException("File name cannot be null or empty");
         }
         try {
-            //check if the url is from the storage account
-            String storageAccount = blobServiceClient.getAccountUrl();
-            if (!url.startsWith(storageAccount)){
-                throw new IllegalArgumentException("File URL is not valid");
-            }
-            //remove the storage account from the url
-            String path = url.substring(storageAccount.length());
-            if (path.startsWith("/")){
-                path = path.substring(1);
-            }
-            String[] pathParts = path.split("/", 2);
-            if (pathParts.length != 2) {
-                throw new IllegalArgumentException("Invalid blob URL format");
+            return getBlobClient(fileName).getProperties();
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404) {
+                throw new ResourceNotFoundException("File not found in Azure Blob Storage:" + fileName);
             }
+            throw new RuntimeException("Failed to read file properties from Azure Blob Storage:", e);
+        }
+    }
 
-            String containerNameFromUrl = pathParts[0];
-            String blobName = pathParts[1];
+    /**
+     * Stream a blob, or a byte range of it, straight into the given output stream
+     * @param fileName The name of the blob
+     * @param offset The first byte to send
+     * @param count The number of bytes to send, or null for the rest of the blob
+     * @param outputStream Where the content is written chunk by chunk
+     */
+    public void download(String fileName, long offset, Long count, OutputStream outputStream) {
+        getBlobClient(fileName).downloadStreamWithResponse(
+                outputStream, new BlobRange(offset, count), null, null, false, null, Context.NONE);
+    }
 
-            // Check if the container matches our configured container
-            if (!containerNameFromUrl.equals(containerName)) {
-                throw new IllegalArgumentException("URL container does not match the configured container");
+    /**
+     * Download a whole blob unless it still matches the given ETag
+     * @param fileName The name of the blob
+     * @param etag The ETag of the copy we already hold, or null to always download
+     * @param outputStream Where the content is written when the blob has changed
+     * @return BlobDownloadHeaders of the downloaded content (ETag, Last-Modified), or null if the blob is unchanged
+     */
+    public BlobDownloadHeaders downloadIfChanged(String fileName, String etag, OutputStream outputStream) {
+        BlobRequestConditions conditions = new BlobRequestConditions().setIfNoneMatch(etag);
+        try {
+            return getBlobClient(fileName)
+                    .downloadStreamWithResponse(outputStream, null, null, conditions, false, null, Context.NONE)
+                    .getDeserializedHeaders();
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 304) {
+                return null;
             }
-            BlobClient client = blobServiceClient
-                    .getBlobContainerClient(containerName)
-                    .getBlobClient(blobName);
-            if(!client.exists()) throw new RuntimeException("File not found in Azure Blob Storage:" + blobName);
-            return client.downloadContent().toBytes();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to download file from Azure Blob Storage:", e);
+            throw new RuntimeException("Failed to download file from Azure Blob Storage:" + fileName, e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Resolve the blob name from a full blob URL of our storage account and container
+     * @param url The complete URL of the blob
+     * @return String name of the blob inside the configured container
+     */
+    public String getBlobNameFromUrl(String url) {
+        return FileRules.getBlobNameFromUrl(blobServiceClient.getAccountUrl(), containerName, url);
+    }
+
+    private BlobClient getBlobClient(String fileName) {
+        return blobServiceClient
+                .getBlobContainerClient(containerName)
+                .getBlobClient(fileName);
+    }
+}
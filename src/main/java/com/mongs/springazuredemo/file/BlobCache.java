@@ -0,0 +1,657 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.storage.blob.models.BlobDownloadHeaders;
+import com.azure.storage.blob.models.BlobProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Two-tier cache for blob content in front of AzureBlobService. Small blobs are kept on
+ * the heap; larger ones, and small ones pushed out of the heap tier, are kept as
+ * memory-mapped files on local disk. Each tier evicts its least recently used entries
+ * once its byte budget is exceeded. Entries older than revalidate-after are checked
+ * with an If-None-Match download, which only transfers content when the blob changed.
+ * <p>
+ * The lock only guards the two maps and their byte counts. Downloads, writing demoted
+ * entries to disk and unmapping evicted files all happen outside it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BlobCache implements MeterBinder {
+
+    private final AzureBlobService azureBlobService;
+
+    @Value("${app.azure.blob.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.azure.blob.cache.heap-max-size:32MB}")
+    private DataSize heapMaxSize;
+
+    @Value("${app.azure.blob.cache.heap-max-entry-size:256KB}")
+    private DataSize heapMaxEntrySize;
+
+    @Value("${app.azure.blob.cache.disk-max-size:1GB}")
+    private DataSize diskMaxSize;
+
+    @Value("${app.azure.blob.cache.disk-max-entry-size:64MB}")
+    private DataSize diskMaxEntrySize;
+
+    @Value("${app.azure.blob.cache.directory:${java.io.tmpdir}/blob-cache}")
+    private Path directory;
+
+    @Value("${app.azure.blob.cache.revalidate-after:PT30S}")
+    private Duration revalidateAfter;
+
+    // MappedByteBuffer has no public unmap, without it an evicted file keeps its disk space
+    // until the buffer happens to be garbage collected
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // access ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> heap = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long heapBytes;
+    private long diskBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+    private final LongAdder heapEvictions = new LongAdder();
+    private final LongAdder diskEvictions = new LongAdder();
+
+    private Path runDirectory;
+
+    @PostConstruct
+    void start() throws IOException {
+        // entries are byte arrays or mapped buffers, both indexed by int
+        if (Math.max(heapMaxEntrySize.toBytes(), diskMaxEntrySize.toBytes()) > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Blob cache entries cannot exceed 2GB, heap-max-entry-size is "
+                    + heapMaxEntrySize + " and disk-max-entry-size " + diskMaxEntrySize);
+        }
+        if (enabled) {
+            // a fresh directory per run, files left by an earlier run are never trusted
+            runDirectory = Files.createTempDirectory(Files.createDirectories(directory), "run-");
+        }
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (runDirectory != null) {
+            FileSystemUtils.deleteRecursively(runDirectory);
+        }
+    }
+
+    /**
+     * Get a blob, from the cache when we hold a current copy
+     * @param blobName The name of the blob
+     * @return BlobSource to write the content from
+     */
+    public BlobSource get(String blobName) {
+        if (!enabled) {
+            return remote(blobName, azureBlobService.getProperties(blobName));
+        }
+        try {
+            Entry entry = lookup(blobName);
+            if (entry != null) {
+                if (System.nanoTime() - entry.validatedAt < revalidateAfter.toNanos()) {
+                    hits.increment();
+                    return entry;
+                }
+                return revalidate(blobName, entry);
+            }
+            misses.increment();
+            BlobProperties properties = azureBlobService.getProperties(blobName);
+            if (properties.getBlobSize() > diskMaxEntrySize.toBytes()) {
+                return remote(blobName, properties);
+            }
+            return loadOnWrite(blobName, properties);
+        } catch (UncheckedIOException e) {
+            log.warn("Local blob cache unavailable for {}, streaming from storage", blobName, e);
+            return remote(blobName, azureBlobService.getProperties(blobName));
+        }
+    }
+
+    /**
+     * Publishes the cache counters: blob.cache.gets tagged with result=hit|miss, of which
+     * the hit ratio is derived, blob.cache.revalidations, blob.cache.served counting the bytes
+     * written from cached copies, and per tier the blob.cache.evictions counter and the
+     * blob.cache.entries and blob.cache.size gauges.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("blob.cache.gets", hits, LongAdder::sum)
+                .description("Blob cache lookups answered from a current cached copy")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("blob.cache.gets", misses, LongAdder::sum)
+                .description("Blob cache lookups that downloaded the blob")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("blob.cache.revalidations", revalidations, LongAdder::sum)
+                .description("Cached blobs checked against storage with If-None-Match")
+                .register(registry);
+        FunctionCounter.builder("blob.cache.served", bytesServed, LongAdder::sum)
+                .description("Bytes written from cached copies")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        bindTier(registry, "heap", heapEvictions, () -> heap.size(), () -> heapBytes);
+        bindTier(registry, "disk", diskEvictions, () -> disk.size(), () -> diskBytes);
+    }
+
+    private void bindTier(MeterRegistry registry, String tier, LongAdder evictions,
+                          LongSupplier entries, LongSupplier bytes) {
+        FunctionCounter.builder("blob.cache.evictions", evictions, LongAdder::sum)
+                .description("Entries evicted from the tier, heap evictions move to disk")
+                .tag("tier", tier)
+                .register(registry);
+        Gauge.builder("blob.cache.entries", () -> locked(entries))
+                .description("Blobs held in the tier")
+                .tag("tier", tier)
+                .register(registry);
+        Gauge.builder("blob.cache.size", () -> locked(bytes))
+                .description("Bytes held in the tier")
+                .tag("tier", tier)
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    private long locked(LongSupplier value) {
+        lock.lock();
+        try {
+            return value.getAsLong();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private BlobSource revalidate(String blobName, Entry entry) {
+        revalidations.increment();
+        Entry refreshed;
+        try {
+            refreshed = load(blobName, entry.size, entry.etag);
+        } catch (RuntimeException e) {
+            // most likely deleted, drop our copy so the next read starts over
+            remove(blobName);
+            throw e;
+        }
+        if (refreshed == null) {
+            entry.validatedAt = System.nanoTime();
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        return uncounted(refreshed);
+    }
+
+    // downloads the blob into the tier its downloaded size belongs to, or returns null if it still
+    // matches etag. sizeHint only presizes the buffer, the blob may have changed since it was taken.
+    private Entry load(String blobName, long sizeHint, String etag) {
+        SpillingBuffer buffer = new SpillingBuffer(sizeHint);
+        BlobDownloadHeaders downloaded;
+        try (buffer) {
+            downloaded = azureBlobService.downloadIfChanged(blobName, etag, buffer);
+        } catch (IOException e) {
+            buffer.discard();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            buffer.discard();
+            throw e;
+        }
+        if (downloaded == null) {
+            buffer.discard();
+            return null;
+        }
+        if (buffer.file == null) {
+            return store(blobName, new HeapEntry(downloaded, buffer.heapBuffer.toByteArray()));
+        }
+        if (buffer.size > diskMaxEntrySize.toBytes()) {
+            buffer.discard();
+            throw new UncheckedIOException(new IOException(blobName + " grew beyond the disk entry limit"));
+        }
+        try {
+            return store(blobName, new DiskEntry(blobName, downloaded.getETag(), downloaded.getLastModified(), buffer.file));
+        } catch (IOException e) {
+            buffer.discard();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Entry lookup(String blobName) {
+        lock.lock();
+        try {
+            Entry entry = heap.get(blobName);
+            return entry != null ? entry : disk.get(blobName);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry store(String blobName, Entry entry) {
+        List<DiskEntry> released = new ArrayList<>();
+        List<Map.Entry<String, Entry>> demoted = new ArrayList<>();
+        lock.lock();
+        try {
+            removeLocked(blobName, released);
+            if (entry instanceof HeapEntry) {
+                heap.put(blobName, entry);
+                heapBytes += entry.size;
+                evictFromHeapLocked(demoted);
+            } else {
+                putOnDiskLocked(blobName, (DiskEntry) entry, released);
+            }
+        } finally {
+            lock.unlock();
+        }
+        released.forEach(DiskEntry::release);
+        demoted.forEach(this::demote);
+        return entry;
+    }
+
+    private void remove(String blobName) {
+        List<DiskEntry> released = new ArrayList<>();
+        lock.lock();
+        try {
+            removeLocked(blobName, released);
+        } finally {
+            lock.unlock();
+        }
+        released.forEach(DiskEntry::release);
+    }
+
+    private void removeLocked(String blobName, List<DiskEntry> released) {
+        Entry entry = heap.remove(blobName);
+        if (entry != null) {
+            heapBytes -= entry.size;
+        }
+        entry = disk.remove(blobName);
+        if (entry != null) {
+            diskBytes -= entry.size;
+            released.add((DiskEntry) entry);
+        }
+    }
+
+    // least recently used heap entries are demoted to the disk tier rather than dropped
+    private void evictFromHeapLocked(List<Map.Entry<String, Entry>> demoted) {
+        Iterator<Map.Entry<String, Entry>> eldest = heap.entrySet().iterator();
+        while (heapBytes > heapMaxSize.toBytes() && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            heapBytes -= evicted.getValue().size;
+            heapEvictions.increment();
+            demoted.add(Map.entry(evicted.getKey(), evicted.getValue()));
+        }
+    }
+
+    // until it is on disk a read of the demoted blob misses and downloads it again
+    private void demote(Map.Entry<String, Entry> evicted) {
+        Entry entry = evicted.getValue();
+        DiskEntry demoted;
+        try {
+            Path file = Files.createTempFile(runDirectory, "blob-", ".bin");
+            Files.write(file, ((HeapEntry) entry).content);
+            demoted = new DiskEntry(evicted.getKey(), entry.etag, entry.lastModified, file);
+            demoted.validatedAt = entry.validatedAt;
+        } catch (IOException e) {
+            log.warn("Could not move {} to the disk cache", evicted.getKey(), e);
+            return;
+        }
+        List<DiskEntry> released = new ArrayList<>();
+        lock.lock();
+        try {
+            // a newer copy was stored while we were writing this one
+            if (heap.containsKey(evicted.getKey()) || disk.containsKey(evicted.getKey())) {
+                released.add(demoted);
+            } else {
+                putOnDiskLocked(evicted.getKey(), demoted, released);
+            }
+        } finally {
+            lock.unlock();
+        }
+        released.forEach(DiskEntry::release);
+    }
+
+    private void putOnDiskLocked(String blobName, DiskEntry entry, List<DiskEntry> released) {
+        disk.put(blobName, entry);
+        diskBytes += entry.size;
+        Iterator<Map.Entry<String, Entry>> eldest = disk.entrySet().iterator();
+        while (diskBytes > diskMaxSize.toBytes() && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            diskBytes -= evicted.size;
+            diskEvictions.increment();
+            released.add((DiskEntry) evicted);
+        }
+    }
+
+    // the read that caused a download is not counted as served from the cache
+    private static BlobSource uncounted(Entry entry) {
+        return new BlobSource() {
+            @Override
+            public long size() {
+                return entry.size;
+            }
+
+            @Override
+            public String etag() {
+                return entry.etag;
+            }
+
+            @Override
+            public OffsetDateTime lastModified() {
+                return entry.lastModified;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream, long offset, long count) throws IOException {
+                entry.writeRange(outputStream, offset, count);
+            }
+        };
+    }
+
+    // the download is deferred to the first write, so a request answered with 304 transfers no content
+    private BlobSource loadOnWrite(String blobName, BlobProperties properties) {
+        return new BlobSource() {
+            @Override
+            public long size() {
+                return properties.getBlobSize();
+            }
+
+            @Override
+            public String etag() {
+                return properties.getETag();
+            }
+
+            @Override
+            public OffsetDateTime lastModified() {
+                return properties.getLastModified();
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream, long offset, long count) throws IOException {
+                Entry entry;
+                try {
+                    entry = load(blobName, properties.getBlobSize(), null);
+                } catch (UncheckedIOException e) {
+                    log.warn("Local blob cache unavailable for {}, streaming from storage", blobName, e);
+                    azureBlobService.download(blobName, offset, count, outputStream);
+                    return;
+                }
+                // the response already carries the size and ETag of the properties, a blob replaced
+                // since then must not be sent under them. The new copy stays cached for the retry
+                if (entry.size != properties.getBlobSize() || !Objects.equals(entry.etag, properties.getETag())) {
+                    throw new IOException(blobName + " changed while it was being served");
+                }
+                entry.writeRange(outputStream, offset, count);
+            }
+        };
+    }
+
+    private BlobSource remote(String blobName, BlobProperties properties) {
+        return new BlobSource() {
+            @Override
+            public long size() {
+                return properties.getBlobSize();
+            }
+
+            @Override
+            public String etag() {
+                return properties.getETag();
+            }
+
+            @Override
+            public OffsetDateTime lastModified() {
+                return properties.getLastModified();
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream, long offset, long count) {
+                azureBlobService.download(blobName, offset, count, outputStream);
+            }
+        };
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            log.warn("Could not unmap a cached blob file", e);
+        }
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Cannot unmap cached blob files, their disk space is freed on garbage collection", e);
+            return null;
+        }
+    }
+
+    // buffers on the heap up to heap-max-entry-size and spills to a file beyond it, so the
+    // tier follows the size actually downloaded rather than the size the blob used to have
+    private final class SpillingBuffer extends OutputStream {
+        ByteArrayOutputStream heapBuffer;
+        Path file;
+        long size;
+        private OutputStream fileOut;
+
+        SpillingBuffer(long sizeHint) {
+            heapBuffer = new ByteArrayOutputStream((int) Math.min(sizeHint, heapMaxEntrySize.toBytes()));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (file == null && size + len > heapMaxEntrySize.toBytes()) {
+                file = Files.createTempFile(runDirectory, "blob-", ".bin");
+                fileOut = Files.newOutputStream(file);
+                heapBuffer.writeTo(fileOut);
+                heapBuffer = null;
+            }
+            if (file == null) {
+                heapBuffer.write(b, off, len);
+            } else {
+                fileOut.write(b, off, len);
+            }
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        }
+
+        void discard() {
+            try {
+                close();
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                log.warn("Could not delete cached blob file {}", file, e);
+            }
+        }
+    }
+
+    private abstract class Entry implements BlobSource {
+        final String etag;
+        final OffsetDateTime lastModified;
+        final long size;
+        volatile long validatedAt = System.nanoTime();
+
+        Entry(String etag, OffsetDateTime lastModified, long size) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public String etag() {
+            return etag;
+        }
+
+        @Override
+        public OffsetDateTime lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream, long offset, long count) throws IOException {
+            writeRange(outputStream, offset, count);
+            bytesServed.add(count);
+        }
+
+        // a range past the entry fails instead of wrapping around, entries never exceed 2GB
+        void writeRange(OutputStream outputStream, long offset, long count) throws IOException {
+            if (offset < 0 || count < 0 || offset + count > size) {
+                throw new IndexOutOfBoundsException("Range " + offset + "+" + count + " outside of " + size + " bytes");
+            }
+            write(outputStream, (int) offset, (int) count);
+        }
+
+        abstract void write(OutputStream outputStream, int offset, int count) throws IOException;
+    }
+
+    private final class HeapEntry extends Entry {
+        final byte[] content;
+
+        HeapEntry(BlobDownloadHeaders downloaded, byte[] content) {
+            super(downloaded.getETag(), downloaded.getLastModified(), content.length);
+            this.content = content;
+        }
+
+        @Override
+        void write(OutputStream outputStream, int offset, int count) throws IOException {
+            outputStream.write(content, offset, count);
+        }
+    }
+
+    private final class DiskEntry extends Entry {
+        final String blobName;
+        final Path file;
+        final MappedByteBuffer content;
+        // one reference held by the cache plus one per write in progress, unmapped at zero
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        DiskEntry(String blobName, String etag, OffsetDateTime lastModified, Path file) throws IOException {
+            this(blobName, etag, lastModified, file, map(file));
+        }
+
+        private DiskEntry(String blobName, String etag, OffsetDateTime lastModified, Path file, MappedByteBuffer content) {
+            super(etag, lastModified, content.capacity());
+            this.blobName = blobName;
+            this.file = file;
+            this.content = content;
+        }
+
+        @Override
+        void write(OutputStream outputStream, int offset, int count) throws IOException {
+            if (!retain()) {
+                // evicted and unmapped after it was looked up
+                azureBlobService.download(blobName, offset, (long) count, outputStream);
+                return;
+            }
+            try {
+                ByteBuffer range = content.duplicate().position(offset).limit(offset + count);
+                WritableByteChannel channel = Channels.newChannel(outputStream);
+                while (range.hasRemaining()) {
+                    channel.write(range);
+                }
+            } finally {
+                release();
+            }
+        }
+
+        private boolean retain() {
+            int current;
+            do {
+                current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        // called once by the cache on eviction and once after every write, the last one
+        // unmaps the file and deletes it so its disk space is returned straight away
+        void release() {
+            if (references.decrementAndGet() != 0) {
+                return;
+            }
+            unmap(content);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete cached blob file {}", file, e);
+            }
+        }
+
+        private static MappedByteBuffer map(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpPipelineNextSyncPolicy;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.http.Outcome;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+
+/**
+ * Records every storage call made by the blob clients, sync and async alike:
+ * azure.blob.requests times each call until its response headers arrive, tagged with the
+ * operation, status and outcome so error rates can be derived from it, and
+ * azure.blob.transferred counts the bytes sent and received by content length.
+ */
+public class BlobMetricsPolicy implements HttpPipelinePolicy {
+
+    private final MeterRegistry registry;
+
+    public BlobMetricsPolicy(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        HttpRequest request = context.getHttpRequest();
+        Timer.Sample sample = Timer.start(registry);
+        return next.process()
+                .doOnSuccess(response -> record(sample, request, response, null))
+                .doOnError(e -> record(sample, request, null, e));
+    }
+
+    @Override
+    public HttpResponse processSync(HttpPipelineCallContext context, HttpPipelineNextSyncPolicy next) {
+        HttpRequest request = context.getHttpRequest();
+        Timer.Sample sample = Timer.start(registry);
+        try {
+            HttpResponse response = next.processSync();
+            record(sample, request, response, null);
+            return response;
+        } catch (RuntimeException e) {
+            record(sample, request, null, e);
+            throw e;
+        }
+    }
+
+    private void record(Timer.Sample sample, HttpRequest request, HttpResponse response, Throwable error) {
+        String operation = operation(request);
+        sample.stop(Timer.builder("azure.blob.requests")
+                .description("Blob storage calls, until the response headers arrive")
+                .tag("operation", operation)
+                .tag("status", response != null ? String.valueOf(response.getStatusCode()) : "IO_ERROR")
+                .tag("outcome", response != null ? Outcome.forStatus(response.getStatusCode()).name() : Outcome.UNKNOWN.name())
+                .tag("exception", error != null ? error.getClass().getSimpleName() : "none")
+                .publishPercentileHistogram()
+                .register(registry));
+
+        transferred(operation, "upload", contentLength(request.getHeaders().getValue(HttpHeaderName.CONTENT_LENGTH)));
+        if (response != null && response.getStatusCode() < 300 && request.getHttpMethod().name().equals("GET")) {
+            transferred(operation, "download", contentLength(response.getHeaders().getValue(HttpHeaderName.CONTENT_LENGTH)));
+        }
+    }
+
+    private void transferred(String operation, String direction, long bytes) {
+        if (bytes > 0) {
+            Counter.builder("azure.blob.transferred")
+                    .description("Bytes sent to and received from blob storage")
+                    .baseUnit("bytes")
+                    .tag("operation", operation)
+                    .tag("direction", direction)
+                    .register(registry)
+                    .increment(bytes);
+        }
+    }
+
+    // method plus the comp query parameter, e.g. put-block, put-blocklist, get-properties, never the blob name
+    static String operation(HttpRequest request) {
+        String method = request.getHttpMethod().name().toLowerCase(Locale.ROOT);
+        if (method.equals("head")) {
+            return "get-properties";
+        }
+        String query = request.getUrl().getQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("comp=")) {
+                    return method + "-" + parameter.substring("comp=".length()).toLowerCase(Locale.ROOT);
+                }
+            }
+        }
+        return method + "-blob";
+    }
+
+    private static long contentLength(String header) {
+        try {
+            return header == null ? 0 : Long.parseLong(header);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
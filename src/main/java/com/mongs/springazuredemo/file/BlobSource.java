@@ -0,0 +1,35 @@
+package com.mongs.springazuredemo.file;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.OffsetDateTime;
+
+/**
+ * Blob content ready to be written to a response, either from the local cache or
+ * streamed from Azure Blob Storage
+ */
+public interface BlobSource {
+
+    /**
+     * @return long size of the blob in bytes
+     */
+    long size();
+
+    /**
+     * @return String ETag of the content
+     */
+    String etag();
+
+    /**
+     * @return OffsetDateTime the blob was last modified, may be null
+     */
+    OffsetDateTime lastModified();
+
+    /**
+     * Write a byte range of the blob to the given output stream
+     * @param outputStream Where the content is written
+     * @param offset The first byte to send
+     * @param count The number of bytes to send
+     */
+    void writeTo(OutputStream outputStream, long offset, long count) throws IOException;
+}
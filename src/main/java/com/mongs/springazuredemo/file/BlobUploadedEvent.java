@@ -0,0 +1,9 @@
+package com.mongs.springazuredemo.file;
+
+/**
+ * Published after a file has been uploaded through AzureBlobService
+ * @param blobName The name of the new blob
+ * @param contentType The content type sent with the upload
+ */
+public record BlobUploadedEvent(String blobName, String contentType) {
+}
@@ -0,0 +1,18 @@
+package com.mongs.springazuredemo.file;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of a single file in a batch upload, in request order
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FileBatchItemResult(int index, String fileName, String url, String error) {
+
+    public static FileBatchItemResult success(int index, String fileName, String url) {
+        return new FileBatchItemResult(index, fileName, url, null);
+    }
+
+    public static FileBatchItemResult failure(int index, String fileName, String error) {
+        return new FileBatchItemResult(index, fileName, null, error);
+    }
+}
@@ -0,0 +1,249 @@
+package com.mongs.springazuredemo.file;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Many files in one request. Uploads run on a shared pool with max-concurrency workers, so
+ * a batch cannot open more storage connections than that however many parts it carries.
+ * ZIP downloads are written straight to the response while the next few blobs are fetched
+ * on the same pool, the archive itself is never held in memory or on disk. What all ZIP
+ * downloads together hold fetched ahead is capped by prefetch-budget.
+ */
+@Service
+@RequiredArgsConstructor
+public class FileBatchService {
+
+    private final AzureBlobService azureBlobService;
+    private final BlobCache blobCache;
+
+    @Value("${app.azure.blob.batch.max-files:50}")
+    private int maxFiles;
+
+    @Value("${app.azure.blob.batch.max-concurrency:8}")
+    private int maxConcurrency;
+
+    @Value("${app.azure.blob.batch.prefetch-max-size:8MB}")
+    private DataSize prefetchMaxSize;
+
+    @Value("${app.azure.blob.batch.prefetch-budget:32MB}")
+    private DataSize prefetchBudget;
+
+    private ExecutorService executor;
+    // one permit per byte fetched ahead and not yet written, shared by every ZIP download
+    private Semaphore prefetchPermits;
+
+    @PostConstruct
+    void start() {
+        prefetchPermits = new Semaphore(Math.toIntExact(prefetchBudget.toBytes()));
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "file-batch-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Upload many images concurrently. A failed file does not fail the others.
+     * @param files The image files to upload
+     * @return List of results in request order, each with the url or the error
+     */
+    public List<FileBatchItemResult> uploadImages(List<MultipartFile> files) {
+        checkBatchSize(files);
+        List<CompletableFuture<FileBatchItemResult>> uploads = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            int index = i;
+            MultipartFile file = files.get(i);
+            uploads.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return FileBatchItemResult.success(index, file.getOriginalFilename(), azureBlobService.uploadImage(file));
+                } catch (RuntimeException e) {
+                    return FileBatchItemResult.failure(index, file.getOriginalFilename(), e.getMessage());
+                }
+            }, executor));
+        }
+        return uploads.stream().map(CompletableFuture::join).toList();
+    }
+
+    /**
+     * Look up the blobs of a ZIP download concurrently, before anything is written,
+     * so a missing blob can still be answered with 404
+     * @param blobNames The names of the blobs, duplicates are dropped
+     * @return List of the blobs to write, in request order
+     * @throws com.mongs.springazuredemo.ResourceNotFoundException if a blob does not exist
+     */
+    public List<NamedBlob> resolve(List<String> blobNames) {
+        checkBatchSize(blobNames);
+        List<CompletableFuture<NamedBlob>> lookups = new LinkedHashSet<>(blobNames).stream()
+                .map(name -> CompletableFuture.supplyAsync(() -> new NamedBlob(name, blobCache.get(name)), executor))
+                .toList();
+        try {
+            return lookups.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Write the blobs as a ZIP archive, one entry per blob, fetching the next ones while
+     * the current one is written. Blobs up to prefetch-max-size are fetched ahead into
+     * memory while prefetch-budget has room for them, the others are streamed from the
+     * cache or storage when their turn comes.
+     * @param blobs The blobs returned by resolve
+     * @param outputStream Where the archive is written
+     */
+    public void writeZip(List<NamedBlob> blobs, OutputStream outputStream) throws IOException {
+        Deque<Prefetch> prefetched = new ArrayDeque<>();
+        int next = 0;
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        try {
+            for (NamedBlob blob : blobs) {
+                while (next < blobs.size() && prefetched.size() < maxConcurrency) {
+                    prefetched.add(prefetch(blobs.get(next++).source()));
+                }
+                Prefetch prefetch = prefetched.poll();
+                try {
+                    byte[] content = prefetch.join();
+                    // images are compressed already, deflating them again costs CPU for nothing
+                    String mediaType = FileRules.getMediaTypeFromFileName(blob.name());
+                    boolean compressed = mediaType.startsWith("image/") && !mediaType.equals("image/svg+xml");
+                    zip.setLevel(compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                    zip.putNextEntry(new ZipEntry(blob.name()));
+                    if (content != null) {
+                        zip.write(content);
+                    } else {
+                        blob.source().writeTo(zip, 0, blob.source().size());
+                    }
+                    zip.closeEntry();
+                } finally {
+                    prefetch.release();
+                }
+            }
+            zip.finish();
+        } finally {
+            // interrupts the fetches still running, they stop at their next chunk
+            prefetched.forEach(Prefetch::cancel);
+        }
+    }
+
+    // a null content means it is streamed when written: too large to hold in memory, or
+    // the budget is taken by what other downloads fetched ahead
+    private Prefetch prefetch(BlobSource source) {
+        int size = (int) Math.min(source.size(), Integer.MAX_VALUE);
+        if (source.size() > prefetchMaxSize.toBytes() || !prefetchPermits.tryAcquire(size)) {
+            return new Prefetch(CompletableFuture.completedFuture(null), 0);
+        }
+        // submitted rather than supplyAsync, so cancelling interrupts a fetch already running
+        return new Prefetch(executor.submit(() -> {
+            InterruptibleBuffer content = new InterruptibleBuffer(size);
+            source.writeTo(content, 0, source.size());
+            return content.toByteArray();
+        }), size);
+    }
+
+    private void checkBatchSize(List<?> items) {
+        if (items == null || items.isEmpty() || items.size() > maxFiles) {
+            throw new IllegalArgumentException("Batch must contain between 1 and " + maxFiles + " files");
+        }
+    }
+
+    // a blob fetched ahead and the budget it holds until written or cancelled
+    private final class Prefetch {
+        private final Future<byte[]> content;
+        private final AtomicInteger permits;
+
+        Prefetch(Future<byte[]> content, int permits) {
+            this.content = content;
+            this.permits = new AtomicInteger(permits);
+        }
+
+        byte[] join() throws IOException {
+            try {
+                return content.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException cause) {
+                    throw cause;
+                }
+                throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while fetching a blob for the archive");
+            }
+        }
+
+        void cancel() {
+            content.cancel(true);
+            release();
+        }
+
+        void release() {
+            prefetchPermits.release(permits.getAndSet(0));
+        }
+    }
+
+    // checks for cancellation between the chunks the blob source writes
+    private static final class InterruptibleBuffer extends OutputStream {
+        private final ByteArrayOutputStream content;
+
+        InterruptibleBuffer(int size) {
+            content = new ByteArrayOutputStream(size);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Fetch ahead cancelled");
+            }
+            content.write(b, off, len);
+        }
+
+        byte[] toByteArray() {
+            return content.toByteArray();
+        }
+    }
+
+    /**
+     * A blob of a ZIP download with the entry name it is written under
+     */
+    public record NamedBlob(String name, BlobSource source) {
+    }
+}
@@ -1,5 +1,7 @@
 package com.mongs.springazuredemo.file;
 
+import com.azure.storage.blob.models.BlobStorageException;
+import com.mongs.springazuredemo.ResourceNotFoundException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -8,15 +10,24 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/files")
@@ -25,6 +36,18 @@ import java.util.Map;
 public class FileController {
 
     private final AzureBlobService azureBlobService;
+    private final BlobCache blobCache;
+    private final ImageVariantService imageVariantService;
+    private final FileBatchService fileBatchService;
+
+    @Value("${app.azure.blob.http.max-age:365d}")
+    private Duration maxAge;
+
+    @Value("${app.azure.blob.http.gzip:true}")
+    private boolean gzipEnabled;
+
+    @Value("${app.azure.blob.http.gzip-types:image/svg+xml}")
+    private List<String> gzipTypes;
 
     /**
      * Upload an image to Azure Blob Storage
@@ -36,6 +59,8 @@ public class FileController {
             @ApiResponse(responseCode = "200", description = "Image uploaded successfully",
                     content = @Content(mediaType = "application/json",
                             schema = @Schema(implementation = Map.class))),
+            @ApiResponse(responseCode = "413", description = "File exceeds spring.servlet.multipart.max-file-size",
+                    content = @Content),
             @ApiResponse(responseCode = "500", description = "Internal server error",
                     content = @Content)
     })
@@ -59,84 +84,308 @@ public class FileController {
         }
     }
 
+    /**
+     * Upload many images to Azure Blob Storage in one request
+     * @param files The image files to upload
+     * @return JSON response with the URL or error of each file, in request order
+     */
+    @Operation(summary = "Upload many images", description = "Uploads the files to Azure Blob Storage concurrently and returns the URL or error of each")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch processed, see each item for its outcome",
+                    content = @Content(mediaType = "application/json")),
+            @ApiResponse(responseCode = "400", description = "No files or too many files",
+                    content = @Content),
+            @ApiResponse(responseCode = "413", description = "A file or the whole request exceeds the multipart limits",
+                    content = @Content)
+    })
+    @PostMapping("/upload/batch")
+    public ResponseEntity<List<FileBatchItemResult>> uploadImages(
+            @Parameter(description = "Image files to upload", required = true)
+            @RequestParam("files") List<MultipartFile> files) {
+        return ResponseEntity.ok(fileBatchService.uploadImages(files));
+    }
+
+    /**
+     * Download many images as one ZIP archive
+     * @param names The names of the files to include
+     * @return The archive, streamed while the files are fetched
+     */
+    @GetMapping("/zip")
+    @Operation(summary = "Download images as ZIP", description = "Streams a ZIP archive of the given files, fetching them from Azure Blob Storage in parallel")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "ZIP archive of the files",
+                    content = @Content(mediaType = "application/zip")),
+            @ApiResponse(responseCode = "400", description = "No names or too many names",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "One of the files was not found",
+                    content = @Content)
+    })
+    public ResponseEntity<StreamingResponseBody> downloadZip(
+            @Parameter(description = "Filenames of the images to include", required = true)
+            @RequestParam List<String> names) {
+        // every blob is looked up before the 200 is committed, so a missing one is still a 404
+        List<FileBatchService.NamedBlob> blobs = fileBatchService.resolve(names);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("files.zip").build().toString())
+                .body(outputStream -> fileBatchService.writeZip(blobs, outputStream));
+    }
+
+    /**
+     * Get a signed URL to upload an image straight to Azure Blob Storage
+     * @param fileName The name of the file to upload
+     * @param contentType Optional content type of the file
+     * @return JSON response with the URL, the method and headers to use, and when it expires
+     */
+    @PostMapping("/upload-url")
+    @Operation(summary = "Get a signed upload URL", description = "Returns a short-lived SAS URL the client PUTs the image to directly, followed by a call to complete the upload")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Signed URL issued",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = SignedUrl.class))),
+            @ApiResponse(responseCode = "400", description = "File name without an extension",
+                    content = @Content)
+    })
+    public ResponseEntity<SignedUrl> createUploadUrl(
+            @Parameter(description = "Name of the file to upload", required = true, example = "photo.jpg")
+            @RequestParam String fileName,
+            @Parameter(description = "Content type of the file, derived from the name if omitted")
+            @RequestParam(required = false) String contentType) {
+        return ResponseEntity.ok(azureBlobService.createUploadUrl(fileName, contentType));
+    }
+
+    /**
+     * Complete an upload made through a signed URL
+     * @param fileName The blob name the signed URL was issued for
+     * @return JSON response with the image URL
+     */
+    @PostMapping("/{fileName}/complete")
+    @Operation(summary = "Complete a signed upload", description = "Verifies an image uploaded through a signed URL and registers it like a regular upload")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Image uploaded successfully",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = Map.class))),
+            @ApiResponse(responseCode = "400", description = "Name was not issued for a signed upload, or the file is empty or too large and was removed",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "Nothing was uploaded to the signed URL",
+                    content = @Content)
+    })
+    public ResponseEntity<Map<String, String>> completeUpload(
+            @Parameter(description = "Blob name returned with the signed upload URL", required = true)
+            @PathVariable String fileName) {
+        String imageUrl = azureBlobService.completeUpload(fileName);
+
+        Map<String, String> response = new HashMap<>();
+        response.put("url", imageUrl);
+        response.put("message", "Image uploaded successfully");
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Get a signed URL to download an image straight from Azure Blob Storage
+     * @param fileName The name of the file to download
+     * @return JSON response with the URL and when it expires
+     */
+    @GetMapping("/{fileName}/download-url")
+    @Operation(summary = "Get a signed download URL", description = "Returns a short-lived read-only SAS URL of the image")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Signed URL issued",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = SignedUrl.class))),
+            @ApiResponse(responseCode = "404", description = "Image not found",
+                    content = @Content)
+    })
+    public ResponseEntity<SignedUrl> createDownloadUrl(
+            @Parameter(description = "Filename of the image", required = true)
+            @PathVariable String fileName) {
+        return ResponseEntity.ok(azureBlobService.createDownloadUrl(fileName));
+    }
+
     /**
      * Retrieve an image by its filename
      * @param fileName The name of the file to retrieve
-     * @return The image file as a response entity
+     * @param width Optional width of a resized variant
+     * @param format Optional format of the resized variant
+     * @param range Optional Range header to fetch part of the file
+     * @param webRequest The request, used to answer If-None-Match and If-Modified-Since
+     * @return The image content streamed from Azure Blob Storage
      */
     @GetMapping("/{fileName}")
-    @Operation(summary = "Get image by filename", description = "Retrieves an image from Azure Blob Storage by its filename")
+    @Operation(summary = "Get image by filename", description = "Streams an image, or a resized variant of it, from Azure Blob Storage by its filename, supports Range requests")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Image retrieved successfully",
                     content = @Content(mediaType = "image/*")),
+            @ApiResponse(responseCode = "206", description = "Requested range of the image",
+                    content = @Content(mediaType = "image/*")),
+            @ApiResponse(responseCode = "304", description = "Image not modified since the given ETag or date",
+                    content = @Content),
+            @ApiResponse(responseCode = "400", description = "Unsupported variant width or format",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Image not found",
+                    content = @Content),
+            @ApiResponse(responseCode = "416", description = "Requested range not satisfiable",
+                    content = @Content),
+            @ApiResponse(responseCode = "503", description = "Too many variants are being generated, retry later",
                     content = @Content)
     })
-    public ResponseEntity<byte[]> getImage(
+    public ResponseEntity<StreamingResponseBody> getImage(
             @Parameter(description = "Filename of the image to retrieve", required = true)
-            @PathVariable String fileName) {
-        try {
-            byte[] imageData = azureBlobService.getImage(fileName);
-
-            // Try to determine the media type from the filename
-            String mediaType = getMediaTypeFromFileName(fileName);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(mediaType));
-
-            return new ResponseEntity<>(imageData, headers, HttpStatus.OK);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
-        }
+            @PathVariable String fileName,
+            @Parameter(description = "Width of a resized variant in pixels, one of the configured widths")
+            @RequestParam(required = false) Integer width,
+            @Parameter(description = "Format of the resized variant, jpg or png, defaults to the original's format")
+            @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            ServletWebRequest webRequest) {
+        return streamBlob(fileName, fileName, width, format, range, webRequest);
     }
 
     /**
      * Retrieve an image by its URL
      * @param url The complete URL of the image
-     * @return The image file as a response entity
+     * @param width Optional width of a resized variant
+     * @param format Optional format of the resized variant
+     * @param range Optional Range header to fetch part of the file
+     * @param webRequest The request, used to answer If-None-Match and If-Modified-Since
+     * @return The image content streamed from Azure Blob Storage
      */
     @GetMapping("/by-url")
-    @Operation(summary = "Get image by URL", description = "Retrieves an image from Azure Blob Storage by its full URL")
+    @Operation(summary = "Get image by URL", description = "Streams an image, or a resized variant of it, from Azure Blob Storage by its full URL, supports Range requests")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Image retrieved successfully",
                     content = @Content(mediaType = "image/*")),
+            @ApiResponse(responseCode = "206", description = "Requested range of the image",
+                    content = @Content(mediaType = "image/*")),
+            @ApiResponse(responseCode = "304", description = "Image not modified since the given ETag or date",
+                    content = @Content),
+            @ApiResponse(responseCode = "400", description = "Unsupported variant width or format",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Image not found",
+                    content = @Content),
+            @ApiResponse(responseCode = "416", description = "Requested range not satisfiable",
+                    content = @Content),
+            @ApiResponse(responseCode = "503", description = "Too many variants are being generated, retry later",
                     content = @Content)
     })
-    public ResponseEntity<byte[]> getImageByUrl(
+    public ResponseEntity<StreamingResponseBody> getImageByUrl(
             @Parameter(description = "Full URL of the image to retrieve", required = true, example = "https://mongsstorage.blob.core.windows.net/images/example.jpg")
-            @RequestParam String url) {
+            @RequestParam String url,
+            @Parameter(description = "Width of a resized variant in pixels, one of the configured widths")
+            @RequestParam(required = false) Integer width,
+            @Parameter(description = "Format of the resized variant, jpg or png, defaults to the original's format")
+            @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            ServletWebRequest webRequest) {
+        String blobName;
         try {
-            byte[] imageData = azureBlobService.getImageByUrl(url);
+            blobName = azureBlobService.getBlobNameFromUrl(url);
+        } catch (IllegalArgumentException e) {
+            // a URL outside the container names no blob of ours
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        // Try to determine the media type from the URL
+        String fileName = FileRules.getFileNameFromUrl(url);
+        return streamBlob(blobName, fileName, width, format, range, webRequest);
+    }
 
-            // Try to determine the media type from the URL
-            String fileName = url.substring(url.lastIndexOf("/") + 1);
-            String mediaType = getMediaTypeFromFileName(fileName);
+    /**
+     * Stream a blob to the response from the local cache or storage, honouring a single byte range
+     * @param blobName The name of the blob in the container
+     * @param fileName The file name used to determine the media type
+     * @param width The width of a resized variant, or null for the original
+     * @param format The format of the resized variant, may be null
+     * @param rangeHeader The raw Range header, may be null
+     * @param webRequest The request carrying any conditional headers
+     * @return 200 with the whole blob, 206 with the requested range, 304, 404 or 416
+     */
+    private ResponseEntity<StreamingResponseBody> streamBlob(String blobName, String fileName, Integer width,
+                                                             String format, String rangeHeader, ServletWebRequest webRequest) {
+        // an unsupported width or format is rejected with 400 before storage is touched
+        String variantFormat = width == null ? null : imageVariantService.resolveFormat(fileName, width, format);
+        BlobSource blob;
+        try {
+            blob = width == null ? blobCache.get(blobName) : imageVariantService.getVariant(blobName, width, variantFormat);
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (BlobStorageException e) {
+            // auth errors, throttling and timeouts are not a missing blob, they reach the exception handler
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            }
+            throw e;
+        }
+        long size = blob.size();
+        String mediaType = FileRules.getMediaTypeFromFileName(width == null ? fileName : "." + variantFormat);
+        HttpRange range = FileRules.getSingleRange(rangeHeader);
+        boolean compressible = gzipEnabled && gzipTypes.contains(mediaType);
+        boolean gzip = compressible && range == null && acceptsGzip(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING));
+
+        // blob names never change content, so caches may keep them without revalidating
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(CacheControl.maxAge(maxAge).cachePublic().immutable());
+        if (compressible) {
+            headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        }
+        // checkNotModified adds the ETag and Last-Modified headers and answers from the
+        // blob properties alone, nothing is downloaded for a 304
+        long lastModified = blob.lastModified() == null ? -1 : blob.lastModified().toInstant().toEpochMilli();
+        if (webRequest.checkNotModified(representationETag(blob.etag(), gzip), lastModified)) {
+            return new ResponseEntity<>(headers, HttpStatus.valueOf(webRequest.getResponse().getStatus()));
+        }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(mediaType));
+        headers.setContentType(MediaType.parseMediaType(mediaType));
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
 
-            return new ResponseEntity<>(imageData, headers, HttpStatus.OK);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return new ResponseEntity<>(outputStream -> {
+                GZIPOutputStream compressed = new GZIPOutputStream(outputStream, 8192);
+                blob.writeTo(compressed, 0, size);
+                compressed.finish();
+            }, headers, HttpStatus.OK);
+        }
+
+        if (range == null) {
+            headers.setContentLength(size);
+            return new ResponseEntity<>(
+                    outputStream -> blob.writeTo(outputStream, 0, size),
+                    headers, HttpStatus.OK);
         }
+
+        long start = range.getRangeStart(size);
+        long end = range.getRangeEnd(size);
+        if (start >= size || end < start) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        }
+        long count = end - start + 1;
+        headers.setContentLength(count);
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        return new ResponseEntity<>(
+                outputStream -> blob.writeTo(outputStream, start, count),
+                headers, HttpStatus.PARTIAL_CONTENT);
     }
 
-    /**
-     * Helper method to determine media type from file name
-     * @param fileName The name of the file
-     * @return The media type as a string
-     */
-    private String getMediaTypeFromFileName(String fileName) {
-        String extension = fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase();
-
-        return switch (extension) {
-            case "png" -> "image/png";
-            case "jpg", "jpeg" -> "image/jpeg";
-            case "gif" -> "image/gif";
-            case "svg" -> "image/svg+xml";
-            case "webp" -> "image/webp";
-            default -> "application/octet-stream";
-        };
+    // the gzip representation is a different entity, so it gets its own ETag
+    private static String representationETag(String etag, boolean gzip) {
+        if (etag == null || etag.isEmpty()) {
+            return null;
+        }
+        String quoted = etag.startsWith("\"") || etag.startsWith("W/") ? etag : "\"" + etag + "\"";
+        return gzip ? quoted.substring(0, quoted.length() - 1) + "-gzip\"" : quoted;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
     }
-}
\ No newline at end of file
+}
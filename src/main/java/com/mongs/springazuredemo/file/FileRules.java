@@ -0,0 +1,142 @@
+package com.mongs.springazuredemo.file;
+
+import org.springframework.http.HttpRange;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Naming, URL and request rules shared by the blocking and the reactive file APIs
+ */
+public final class FileRules {
+
+    /**
+     * Where signed uploads are staged until they are completed, never served
+     */
+    public static final String PENDING_UPLOADS = "pending/";
+
+    private FileRules() {
+    }
+
+    /**
+     * Extension of an uploaded file, including the dot
+     * @param originalFilename The name the client sent
+     * @return String extension such as ".png"
+     * @throws IllegalArgumentException if the name has no extension
+     */
+    public static String getExtension(String originalFilename) {
+        if (originalFilename == null || originalFilename.lastIndexOf(".") < 0) {
+            throw new IllegalArgumentException("File name must have an extension");
+        }
+        return originalFilename.substring(originalFilename.lastIndexOf("."));
+    }
+
+    /**
+     * Generate a unique blob name that keeps the uploaded file's extension
+     * @param originalFilename The name the client sent
+     * @return String blob name
+     */
+    public static String uniqueFileName(String originalFilename) {
+        return UUID.randomUUID().toString() + getExtension(originalFilename);
+    }
+
+    /**
+     * Whether a name is one uniqueFileName could have generated, a UUID and an extension
+     * @param fileName The name to check
+     * @return true for generated names
+     */
+    public static boolean isUniqueFileName(String fileName) {
+        if (fileName == null || fileName.indexOf('.') < 0 || fileName.indexOf('/') >= 0) {
+            return false;
+        }
+        String id = fileName.substring(0, fileName.indexOf('.'));
+        try {
+            return UUID.fromString(id).toString().equals(id);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Resolve the blob name from a full blob URL of our storage account and container
+     * @param accountUrl The URL of the storage account
+     * @param containerName The configured container
+     * @param url The complete URL of the blob
+     * @return String name of the blob inside the configured container
+     */
+    public static String getBlobNameFromUrl(String accountUrl, String containerName, String url) {
+        if (url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("File URL cannot be null or empty");
+        }
+        //check if the url is from the storage account
+        if (!url.startsWith(accountUrl)){
+            throw new IllegalArgumentException("File URL is not valid");
+        }
+        //remove the storage account from the url
+        String path = url.substring(accountUrl.length());
+        if (path.startsWith("/")){
+            path = path.substring(1);
+        }
+        String[] pathParts = path.split("/", 2);
+        if (pathParts.length != 2) {
+            throw new IllegalArgumentException("Invalid blob URL format");
+        }
+
+        String containerNameFromUrl = pathParts[0];
+        String blobName = pathParts[1];
+
+        // Check if the container matches our configured container
+        if (!containerNameFromUrl.equals(containerName)) {
+            throw new IllegalArgumentException("URL container does not match the configured container");
+        }
+        if (blobName.startsWith(PENDING_UPLOADS)) {
+            throw new IllegalArgumentException("File URL is not valid");
+        }
+        return blobName;
+    }
+
+    /**
+     * The last path segment of a URL, used to determine the media type
+     * @param url The complete URL of the blob
+     * @return String file name
+     */
+    public static String getFileNameFromUrl(String url) {
+        return url.substring(url.lastIndexOf("/") + 1);
+    }
+
+    /**
+     * Determine media type from file name
+     * @param fileName The name of the file
+     * @return The media type as a string
+     */
+    public static String getMediaTypeFromFileName(String fileName) {
+        String extension = fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase();
+
+        return switch (extension) {
+            case "png" -> "image/png";
+            case "jpg", "jpeg" -> "image/jpeg";
+            case "gif" -> "image/gif";
+            case "svg" -> "image/svg+xml";
+            case "webp" -> "image/webp";
+            default -> "application/octet-stream";
+        };
+    }
+
+    /**
+     * The single byte range a request asks for. Multi-range requests are answered with
+     * the full content, which RFC 9110 allows, and an unparseable header is ignored.
+     * @param rangeHeader The raw Range header, may be null
+     * @return HttpRange, or null to send the full content
+     */
+    public static HttpRange getSingleRange(String rangeHeader) {
+        if (rangeHeader == null || rangeHeader.isEmpty()) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.mongs.springazuredemo.file;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class ImageVariantBusyException extends RuntimeException {
+    public ImageVariantBusyException(String message) {
+        super(message);
+    }
+}
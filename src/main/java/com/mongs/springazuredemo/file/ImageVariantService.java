@@ -0,0 +1,306 @@
+package com.mongs.springazuredemo.file;
+
+import com.mongs.springazuredemo.ResourceNotFoundException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resized and re-encoded variants of uploaded images, stored next to the originals
+ * under variants/{width}/{blobName}.{format}. Variants for the configured widths are
+ * generated in the background after each upload on a bounded worker pool; a missing
+ * variant is generated on first request, and concurrent requests for the same
+ * variant share that one generation. At most max-concurrent images are decoded at
+ * once, background or on demand, a request that cannot start within max-wait is
+ * rejected with 503. Uses only the JDK's ImageIO and Java 2D.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageVariantService {
+
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "jpg", "image/jpeg",
+            "png", "image/png",
+            "gif", "image/gif",
+            "bmp", "image/bmp"
+    );
+
+    private final AzureBlobService azureBlobService;
+    private final BlobCache blobCache;
+
+    @Value("${app.azure.blob.variants.widths:120,480}")
+    private List<Integer> widths;
+
+    @Value("${app.azure.blob.variants.formats:jpg,png}")
+    private List<String> formats;
+
+    @Value("${app.azure.blob.variants.pregenerate:true}")
+    private boolean pregenerate;
+
+    @Value("${app.azure.blob.variants.workers:2}")
+    private int workers;
+
+    @Value("${app.azure.blob.variants.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${app.azure.blob.variants.max-input-size:16MB}")
+    private DataSize maxInputSize;
+
+    @Value("${app.azure.blob.variants.max-pixels:40000000}")
+    private long maxPixels;
+
+    @Value("${app.azure.blob.variants.max-concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${app.azure.blob.variants.max-wait:1s}")
+    private Duration maxWait;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+    // each decode can hold max-pixels x 4 bytes, request threads are not bounded under virtual threads
+    private Semaphore generations;
+
+    @PostConstruct
+    void start() {
+        generations = new Semaphore(maxConcurrent, true);
+        AtomicInteger threads = new AtomicInteger();
+        // a full queue drops the background job, the variant is still generated on first request
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-variant-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> log.warn("Image variant queue is full, skipping background generation"));
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Validate a variant request and pick its output format
+     * @param fileName The name of the original image
+     * @param width The requested width in pixels
+     * @param format The requested format, or null to keep the original's format where possible
+     * @return String format the variant is encoded in
+     * @throws IllegalArgumentException if the width or format is not one we generate
+     */
+    public String resolveFormat(String fileName, int width, String format) {
+        if (!widths.contains(width)) {
+            throw new IllegalArgumentException("Width must be one of " + widths);
+        }
+        if (format == null) {
+            String extension = normalize(fileName.substring(fileName.lastIndexOf(".") + 1));
+            return formats.contains(extension) ? extension : formats.get(0);
+        }
+        String normalized = normalize(format);
+        if (!formats.contains(normalized)) {
+            throw new IllegalArgumentException("Format must be one of " + formats);
+        }
+        return normalized;
+    }
+
+    /**
+     * Get a variant of an image, generating it if it does not exist yet
+     * @param blobName The name of the original image
+     * @param width The width in pixels, as validated by resolveFormat
+     * @param format The format, as returned by resolveFormat
+     * @return BlobSource of the variant
+     * @throws ImageVariantBusyException if the variant has to be generated and max-concurrent
+     *                                   generations are still running after max-wait
+     */
+    public BlobSource getVariant(String blobName, int width, String format) {
+        String variantName = variantName(blobName, width, format);
+        try {
+            return blobCache.get(variantName);
+        } catch (ResourceNotFoundException e) {
+            ensureVariant(blobName, width, format, true);
+            return blobCache.get(variantName);
+        }
+    }
+
+    /**
+     * Queue the configured variants of a freshly uploaded image
+     * @param event The upload that just finished
+     */
+    @EventListener
+    public void onUpload(BlobUploadedEvent event) {
+        if (!pregenerate || event.contentType() == null || !event.contentType().startsWith("image/")
+                || event.contentType().equals("image/svg+xml")) {
+            return;
+        }
+        String format = resolveFormat(event.blobName(), widths.get(0), null);
+        for (int width : widths) {
+            executor.execute(() -> {
+                try {
+                    ensureVariant(event.blobName(), width, format, false);
+                } catch (RuntimeException e) {
+                    log.warn("Could not generate {}px variant of {}", width, event.blobName(), e);
+                }
+            });
+        }
+    }
+
+    static String variantName(String blobName, int width, String format) {
+        return "variants/" + width + "/" + blobName + "." + format;
+    }
+
+    // single flight: the first caller generates, everyone else arriving meanwhile waits for it
+    private void ensureVariant(String blobName, int width, String format, boolean onDemand) {
+        String variantName = variantName(blobName, width, format);
+        CompletableFuture<Void> generation = new CompletableFuture<>();
+        CompletableFuture<Void> existing = inFlight.putIfAbsent(variantName, generation);
+        if (existing != null) {
+            try {
+                existing.join();
+                return;
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            if (!azureBlobService.exists(variantName)) {
+                byte[] variant;
+                acquireGeneration(onDemand);
+                try {
+                    variant = generate(blobName, width, format);
+                } finally {
+                    generations.release();
+                }
+                azureBlobService.upload(variantName, variant, CONTENT_TYPES.get(format));
+            }
+            generation.complete(null);
+        } catch (RuntimeException e) {
+            generation.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(variantName, generation);
+        }
+    }
+
+    // background jobs wait their turn, a request gives up after max-wait
+    private void acquireGeneration(boolean onDemand) {
+        try {
+            if (!onDemand) {
+                generations.acquire();
+            } else if (!generations.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new ImageVariantBusyException("Too many image variants are being generated, retry later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to generate an image variant", e);
+        }
+    }
+
+    private byte[] generate(String blobName, int width, String format) {
+        try {
+            BlobSource original = blobCache.get(blobName);
+            if (original.size() > maxInputSize.toBytes()) {
+                throw new IllegalArgumentException("Image is too large to resize: " + blobName);
+            }
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) original.size());
+            original.writeTo(content, 0, original.size());
+            BufferedImage image = decode(blobName, content.toByteArray());
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            if (!ImageIO.write(resize(image, width, !format.equals("png") && !format.equals("gif")), format, encoded)) {
+                throw new IllegalStateException("No image writer for " + format);
+            }
+            return encoded.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // reads the dimensions from the header first, a few KB of compressed input can
+    // otherwise decode to a bitmap of many gigabytes
+    private BufferedImage decode(String blobName, byte[] content) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(content))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("File is not an image we can resize: " + blobName);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > maxPixels) {
+                    throw new IllegalArgumentException("Image has too many pixels to resize: " + blobName);
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scale an image down to the given width keeping its aspect ratio, never up.
+     * Halves in steps, a single bilinear pass over a large reduction skips most source pixels.
+     */
+    static BufferedImage resize(BufferedImage source, int width, boolean opaque) {
+        int targetWidth = Math.min(width, source.getWidth());
+        int targetHeight = Math.max(1, (int) Math.round((double) source.getHeight() * targetWidth / source.getWidth()));
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            currentWidth = Math.max(targetWidth, currentWidth / 2);
+            currentHeight = Math.max(targetHeight, currentHeight / 2);
+            BufferedImage step = new BufferedImage(currentWidth, currentHeight, type);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                if (opaque) {
+                    // formats without alpha get a white background instead of black
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, currentWidth, currentHeight);
+                }
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (currentWidth != targetWidth || currentHeight != targetHeight);
+        return current;
+    }
+
+    private static String normalize(String format) {
+        String lower = format.toLowerCase();
+        return lower.equals("jpeg") ? "jpg" : lower;
+    }
+}
@@ -0,0 +1,125 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.storage.blob.BlobAsyncClient;
+import com.azure.storage.blob.BlobServiceAsyncClient;
+import com.azure.storage.blob.models.BlobDownloadAsyncResponse;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import com.mongs.springazuredemo.ResourceNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Non-blocking counterpart of AzureBlobService on the async storage client. Content
+ * flows through as ByteBuffer chunks, no request thread waits on storage I/O and no
+ * file is spooled to disk. Names and URLs follow the same FileRules as the blocking API.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReactiveAzureBlobService {
+
+    private final BlobServiceAsyncClient blobServiceAsyncClient;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${spring.cloud.azure.storage.blob.container-name}")
+    private String containerName;
+
+    @Value("${app.azure.blob.upload.block-size:4MB}")
+    private DataSize uploadBlockSize;
+
+    @Value("${app.azure.blob.upload.max-concurrency:4}")
+    private int uploadMaxConcurrency;
+
+    @Value("${app.azure.blob.upload.max-single-upload-size:4MB}")
+    private DataSize uploadMaxSingleUploadSize;
+
+    /**
+     * upload image to Azure Blob Storage as it arrives.
+     * Always uses a generated name, a content-addressed name needs the whole file before the first byte is sent.
+     * @param originalFilename The name the client sent
+     * @param contentType The content type of the file
+     * @param content The file content, an empty stream fails the upload
+     * @return Mono with the url of the uploaded image
+     */
+    public Mono<String> uploadImage(String originalFilename, String contentType, Flux<ByteBuffer> content) {
+        String uniqueFileName;
+        try {
+            uniqueFileName = FileRules.uniqueFileName(originalFilename);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+        BlobAsyncClient client = getBlobAsyncClient(uniqueFileName);
+        Flux<ByteBuffer> data = content
+                .filter(ByteBuffer::hasRemaining)
+                .switchIfEmpty(Mono.error(new IllegalArgumentException("File cannot be null or empty")));
+        //blocks are staged in parallel as soon as they fill up, then committed with the headers and metadata
+        BlobParallelUploadOptions options = new BlobParallelUploadOptions(data)
+                .setParallelTransferOptions(new ParallelTransferOptions()
+                        .setBlockSizeLong(uploadBlockSize.toBytes())
+                        .setMaxConcurrency(uploadMaxConcurrency)
+                        .setMaxSingleUploadSizeLong(uploadMaxSingleUploadSize.toBytes()))
+                .setHeaders(new BlobHttpHeaders().setContentType(contentType))
+                .setMetadata(Map.of(
+                        "originalFilename", URLEncoder.encode(originalFilename, StandardCharsets.UTF_8)));
+        return client.uploadWithResponse(options)
+                .doOnSuccess(response -> eventPublisher.publishEvent(new BlobUploadedEvent(uniqueFileName, contentType)))
+                .thenReturn(client.getBlobUrl());
+    }
+
+    /**
+     * Fetch the properties (size, content type, etag) of a blob in one call
+     * @param fileName The name of the blob
+     * @return Mono with the BlobProperties, failing with ResourceNotFoundException if there is no such blob
+     */
+    public Mono<BlobProperties> getProperties(String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("File name cannot be null or empty"));
+        }
+        return getBlobAsyncClient(fileName).getProperties()
+                .onErrorMap(BlobStorageException.class, e -> e.getStatusCode() == 404
+                        ? new ResourceNotFoundException("File not found in Azure Blob Storage:" + fileName)
+                        : new RuntimeException("Failed to read file properties from Azure Blob Storage:", e));
+    }
+
+    /**
+     * Stream a blob, or a byte range of it, chunk by chunk as storage sends it
+     * @param fileName The name of the blob
+     * @param offset The first byte to send
+     * @param count The number of bytes to send, or null for the rest of the blob
+     * @return Flux of the content
+     */
+    public Flux<ByteBuffer> download(String fileName, long offset, Long count) {
+        return getBlobAsyncClient(fileName)
+                .downloadStreamWithResponse(new BlobRange(offset, count), null, null, false)
+                .flatMapMany(BlobDownloadAsyncResponse::getValue);
+    }
+
+    /**
+     * Resolve the blob name from a full blob URL of our storage account and container
+     * @param url The complete URL of the blob
+     * @return String name of the blob inside the configured container
+     */
+    public String getBlobNameFromUrl(String url) {
+        return FileRules.getBlobNameFromUrl(blobServiceAsyncClient.getAccountUrl(), containerName, url);
+    }
+
+    private BlobAsyncClient getBlobAsyncClient(String fileName) {
+        return blobServiceAsyncClient
+                .getBlobContainerAsyncClient(containerName)
+                .getBlobAsyncClient(fileName);
+    }
+}
@@ -0,0 +1,182 @@
+package com.mongs.springazuredemo.file;
+
+import com.mongs.springazuredemo.ResourceNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.PayloadTooLargeException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handlers of the reactive file API. Same responses as FileController for uploads and
+ * downloads of originals, but the upload is piped from the request body into storage
+ * and the download from storage into the response without holding a thread per request.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReactiveFileHandler {
+
+    private final ReactiveAzureBlobService reactiveAzureBlobService;
+
+    @Value("${app.azure.blob.http.max-age:365d}")
+    private Duration maxAge;
+
+    // the limit FileController gets from the servlet multipart resolver
+    @Value("${spring.servlet.multipart.max-file-size:1MB}")
+    private DataSize maxFileSize;
+
+    /**
+     * Upload the multipart "file" part to Azure Blob Storage while it is being received
+     * @param request The multipart request
+     * @return JSON response with the image URL, 400 without a usable file, 413 past max-file-size
+     */
+    public Mono<ServerResponse> uploadImage(ServerRequest request) {
+        return request.bodyToFlux(PartEvent.class)
+                .windowUntil(PartEvent::isLast)
+                .concatMap(part -> part.switchOnFirst((first, events) -> {
+                    if (first.get() instanceof FilePartEvent filePart && filePart.name().equals("file")) {
+                        String contentType = filePart.headers().getContentType() == null
+                                ? null : filePart.headers().getContentType().toString();
+                        AtomicLong received = new AtomicLong();
+                        Flux<ByteBuffer> content = events.map(event -> toByteBuffer(event.content()))
+                                .handle((buffer, sink) -> {
+                                    if (received.addAndGet(buffer.remaining()) > maxFileSize.toBytes()) {
+                                        sink.error(new PayloadTooLargeException(null));
+                                    } else {
+                                        sink.next(buffer);
+                                    }
+                                });
+                        return reactiveAzureBlobService.uploadImage(filePart.filename(), contentType, content);
+                    }
+                    // other form fields are drained and dropped
+                    return events.doOnNext(event -> DataBufferUtils.release(event.content())).then(Mono.empty());
+                }))
+                .next()
+                .switchIfEmpty(Mono.error(new IllegalArgumentException("File cannot be null or empty")))
+                .flatMap(imageUrl -> {
+                    Map<String, String> response = new HashMap<>();
+                    response.put("url", imageUrl);
+                    response.put("message", "Image uploaded successfully");
+                    return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(response);
+                })
+                .onErrorResume(e -> {
+                    HttpStatusCode status = HttpStatus.INTERNAL_SERVER_ERROR;
+                    String message = e.getMessage();
+                    if (e instanceof IllegalArgumentException) {
+                        status = HttpStatus.BAD_REQUEST;
+                    } else if (e instanceof ResponseStatusException statusException) {
+                        status = statusException.getStatusCode();
+                        message = statusException.getReason();
+                    }
+                    Map<String, String> response = new HashMap<>();
+                    response.put("error", message);
+                    return ServerResponse.status(status)
+                            .contentType(MediaType.APPLICATION_JSON).bodyValue(response);
+                });
+    }
+
+    /**
+     * Retrieve an image by its filename
+     * @param request The request with the fileName path variable and an optional Range header
+     * @return The image content streamed from Azure Blob Storage
+     */
+    public Mono<ServerResponse> getImage(ServerRequest request) {
+        String fileName = request.pathVariable("fileName");
+        return streamBlob(fileName, fileName, request);
+    }
+
+    /**
+     * Retrieve an image by its URL
+     * @param request The request with the url query parameter and an optional Range header
+     * @return The image content streamed from Azure Blob Storage
+     */
+    public Mono<ServerResponse> getImageByUrl(ServerRequest request) {
+        String url = request.queryParam("url").orElse(null);
+        String blobName;
+        try {
+            blobName = reactiveAzureBlobService.getBlobNameFromUrl(url);
+        } catch (Exception e) {
+            return ServerResponse.notFound().build();
+        }
+        return streamBlob(blobName, FileRules.getFileNameFromUrl(url), request);
+    }
+
+    /**
+     * Stream a blob from storage to the response, honouring a single byte range
+     * @return 200 with the whole blob, 206 with the requested range, 304, 404 or 416
+     */
+    private Mono<ServerResponse> streamBlob(String blobName, String fileName, ServerRequest request) {
+        HttpRange range = FileRules.getSingleRange(request.headers().firstHeader(HttpHeaders.RANGE));
+        return reactiveAzureBlobService.getProperties(blobName)
+                .flatMap(properties -> {
+                    long size = properties.getBlobSize();
+                    // blob names never change content, so caches may keep them without revalidating
+                    CacheControl cacheControl = CacheControl.maxAge(maxAge).cachePublic().immutable();
+                    Mono<ServerResponse> notModified = properties.getLastModified() == null
+                            ? Mono.empty()
+                            : request.checkNotModified(properties.getLastModified().toInstant(), properties.getETag());
+                    return notModified.switchIfEmpty(Mono.defer(() -> {
+                        HttpHeaders headers = new HttpHeaders();
+                        headers.setCacheControl(cacheControl);
+                        headers.setContentType(MediaType.parseMediaType(FileRules.getMediaTypeFromFileName(fileName)));
+                        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+                        if (properties.getETag() != null) {
+                            headers.setETag(properties.getETag());
+                        }
+                        if (properties.getLastModified() != null) {
+                            headers.setLastModified(properties.getLastModified().toInstant());
+                        }
+                        if (range == null) {
+                            headers.setContentLength(size);
+                            return ServerResponse.ok().headers(h -> h.addAll(headers))
+                                    .body(reactiveAzureBlobService.download(blobName, 0, null), ByteBuffer.class);
+                        }
+                        long start = range.getRangeStart(size);
+                        long end = range.getRangeEnd(size);
+                        if (start >= size || end < start) {
+                            return ServerResponse.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                                    .build();
+                        }
+                        long count = end - start + 1;
+                        headers.setContentLength(count);
+                        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+                        return ServerResponse.status(HttpStatus.PARTIAL_CONTENT).headers(h -> h.addAll(headers))
+                                .body(reactiveAzureBlobService.download(blobName, start, count), ByteBuffer.class);
+                    }));
+                })
+                .onErrorResume(ResourceNotFoundException.class, e -> ServerResponse.notFound().build());
+    }
+
+    // storage keeps hold of the chunks until their block is sent, so copy them out of the pooled buffer
+    private static ByteBuffer toByteBuffer(DataBuffer buffer) {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            return ByteBuffer.wrap(bytes);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+}
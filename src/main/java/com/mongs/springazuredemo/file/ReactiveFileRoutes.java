@@ -0,0 +1,40 @@
+package com.mongs.springazuredemo.file;
+
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.reactive.ServletHttpHandlerAdapter;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Mounts the reactive file API under /api/reactive/files in the same servlet container
+ * as Spring MVC. Requests to it use non-blocking Servlet I/O, so a slow client or a slow
+ * storage call holds a connection but no worker thread.
+ */
+@Configuration
+public class ReactiveFileRoutes {
+
+    static final String PATH = "/api/reactive/files";
+
+    @Bean
+    public RouterFunction<ServerResponse> reactiveFileRouter(ReactiveFileHandler handler) {
+        return RouterFunctions.route()
+                .POST("/upload", handler::uploadImage)
+                .GET("/by-url", handler::getImageByUrl)
+                .GET("/{fileName}", handler::getImage)
+                .build();
+    }
+
+    @Bean
+    public ServletRegistrationBean<ServletHttpHandlerAdapter> reactiveFileServlet(
+            RouterFunction<ServerResponse> reactiveFileRouter) {
+        ServletHttpHandlerAdapter servlet = new ServletHttpHandlerAdapter(RouterFunctions.toHttpHandler(reactiveFileRouter));
+        ServletRegistrationBean<ServletHttpHandlerAdapter> registration = new ServletRegistrationBean<>(servlet, PATH + "/*");
+        registration.setName("reactiveFileServlet");
+        registration.setAsyncSupported(true);
+        registration.setLoadOnStartup(1);
+        return registration;
+    }
+}
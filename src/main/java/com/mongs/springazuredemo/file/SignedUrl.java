@@ -0,0 +1,12 @@
+package com.mongs.springazuredemo.file;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+/**
+ * A short-lived SAS URL the client uses to talk to blob storage directly,
+ * with the method and request headers it has to send
+ */
+public record SignedUrl(String blobName, String url, String method, Map<String, String> headers,
+                        OffsetDateTime expiresAt) {
+}
@@ -0,0 +1,17 @@
+-- The schema of postgresql/V1__tasks_schema.sql for the embedded test database,
+-- which always starts empty and so needs none of the upgrade steps
+
+CREATE SEQUENCE tasks_id_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE tasks (
+    id           BIGINT       NOT NULL PRIMARY KEY,
+    title        VARCHAR(255),
+    description  VARCHAR(255),
+    status       VARCHAR(1)   DEFAULT 'P' NOT NULL,
+    created_date TIMESTAMP(6),
+    version      BIGINT       DEFAULT 0 NOT NULL,
+    CONSTRAINT tasks_status_check CHECK (status IN ('P', 'I', 'C'))
+);
+
+CREATE INDEX idx_tasks_status_created ON tasks (status, created_date, id);
+CREATE INDEX idx_tasks_created ON tasks (created_date, id);
@@ -0,0 +1,42 @@
+-- Brings the tasks table to the schema the Task entity maps. Runs on an empty database as
+-- well as on the table of the first release, which Hibernate created with an identity id,
+-- a free-text status and no version column.
+
+CREATE TABLE IF NOT EXISTS tasks (
+    id           BIGINT       NOT NULL PRIMARY KEY,
+    title        VARCHAR(255),
+    description  VARCHAR(255),
+    status       VARCHAR(255),
+    created_date TIMESTAMP(6)
+);
+
+-- ids come from tasks_id_seq in pools of 50 (allocationSize), replace an identity or
+-- serial default with a plain sequence that continues after the highest existing id
+ALTER TABLE tasks ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE tasks ALTER COLUMN id DROP DEFAULT;
+CREATE SEQUENCE IF NOT EXISTS tasks_id_seq;
+ALTER SEQUENCE tasks_id_seq INCREMENT BY 50 OWNED BY tasks.id;
+SELECT setval('tasks_id_seq', COALESCE(MAX(id), 0) + 1, MAX(id) IS NOT NULL) FROM tasks;
+
+-- optimistic locking, rows written before it existed start at version 0
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS version BIGINT;
+UPDATE tasks SET version = 0 WHERE version IS NULL;
+ALTER TABLE tasks ALTER COLUMN version SET DEFAULT 0;
+ALTER TABLE tasks ALTER COLUMN version SET NOT NULL;
+
+-- one-character status codes, see TaskStatus
+UPDATE tasks SET status = CASE
+        WHEN LOWER(TRIM(status)) IN ('completed', 'complete', 'done') THEN 'C'
+        WHEN LOWER(TRIM(status)) IN ('in_progress', 'in progress', 'in-progress', 'inprogress') THEN 'I'
+        ELSE 'P'
+    END
+WHERE status IS NULL OR status NOT IN ('P', 'I', 'C');
+ALTER TABLE tasks ALTER COLUMN status TYPE VARCHAR(1);
+ALTER TABLE tasks ALTER COLUMN status SET DEFAULT 'P';
+ALTER TABLE tasks ALTER COLUMN status SET NOT NULL;
+ALTER TABLE tasks DROP CONSTRAINT IF EXISTS tasks_status_check;
+ALTER TABLE tasks ADD CONSTRAINT tasks_status_check CHECK (status IN ('P', 'I', 'C'));
+
+-- keyset pagination and the status filter, see TaskSpecifications
+CREATE INDEX IF NOT EXISTS idx_tasks_status_created ON tasks (status, created_date, id);
+CREATE INDEX IF NOT EXISTS idx_tasks_created ON tasks (created_date, id);
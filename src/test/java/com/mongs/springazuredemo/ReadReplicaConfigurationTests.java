@@ -0,0 +1,200 @@
+package com.mongs.springazuredemo;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Two embedded H2 databases stand in for the primary and a replica, each query reports
+ * which one it ran on. A third replica URL points at a database that does not exist.
+ * Task rows share their IDs on both databases and carry different titles, so a task
+ * read through TaskService shows where it came from.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ReadReplicaConfiguration.class, TaskService.class, TaskStatistics.class})
+@ImportAutoConfiguration({JdbcTemplateAutoConfiguration.class, ValidationAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "app.datasource.replicas.enabled=true",
+        "app.datasource.replicas.urls=jdbc:h2:mem:down;IFEXISTS=TRUE,jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1",
+        "app.datasource.replicas.check-interval=1h",
+        "app.datasource.replicas.max-lag=10s",
+        "app.datasource.replicas.lag-query=SELECT COALESCE(MAX(seconds), 0) FROM replica_lag"
+})
+class ReadReplicaConfigurationTests {
+
+    private static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ReplicaDataSource replicaDataSource;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+            statement.execute("RUNSCRIPT FROM 'classpath:db/migration/h2/V1__tasks_schema.sql'");
+            statement.execute(insertTask(1, "on replica", 0));
+        }
+        jdbcTemplate.execute("DELETE FROM tasks");
+        jdbcTemplate.execute(insertTask(1, "on primary", 0));
+        setReplicaLag(0);
+        replicaDataSource.checkHealth();
+    }
+
+    @Test
+    void readOnlyTransactionsRunOnTheHealthyReplica() {
+        assertThat(database(true)).isEqualTo("REPLICA");
+        assertThat(database(false)).isEqualTo("PRIMARY");
+        assertThat(replicaDataSource.getReplicas()).extracting(ReplicaDataSource.Replica::isHealthy)
+                .containsExactly(false, true);
+
+        // read-your-writes: a read inside a write transaction and an explicit primary read
+        TransactionTemplate write = new TransactionTemplate(transactionManager);
+        String insideWrite = write.execute(status -> database(true));
+        String onPrimary = ReplicaDataSource.onPrimary(() -> database(true));
+        assertThat(insideWrite).isEqualTo("PRIMARY");
+        assertThat(onPrimary).isEqualTo("PRIMARY");
+    }
+
+    @Test
+    void laggingReplicaIsSkippedUntilItCatchesUp() throws SQLException {
+        setReplicaLag(30);
+        replicaDataSource.checkHealth();
+        assertThat(database(true)).isEqualTo("PRIMARY");
+
+        setReplicaLag(2);
+        replicaDataSource.checkHealth();
+        assertThat(database(true)).isEqualTo("REPLICA");
+    }
+
+    @Test
+    void taskReadsInAnOpenInViewRequestRunOnTheReplica() {
+        TaskPage page = inRequest(() -> taskService.getAllTasks(TaskFilter.none(), null, 10));
+        Task task = inRequest(() -> taskService.getTaskById(1L).orElseThrow());
+
+        assertThat(page.items()).extracting(Task::getTitle).containsExactly("on replica");
+        assertThat(task.getTitle()).isEqualTo("on replica");
+    }
+
+    @Test
+    void taskIsFoundRightAfterItWasCreated() {
+        // past the IDs setUp inserted by hand
+        jdbcTemplate.execute("ALTER SEQUENCE tasks_id_seq RESTART WITH 100");
+        Task task = new Task();
+        task.setTitle("created");
+        Long id = inRequest(() -> taskService.createTask(task)).getId();
+
+        // not replicated yet, the lookup after the POST still finds it
+        assertThat(inRequest(() -> taskService.getTaskById(id))).get().extracting(Task::getTitle).isEqualTo("created");
+        assertThat(inRequest(() -> taskService.getTaskById(42L))).isEmpty();
+    }
+
+    @Test
+    void writeAfterAReadInTheSameRequestRunsOnThePrimary() {
+        inRequest(() -> {
+            assertThat(taskService.getTaskById(1L).orElseThrow().getTitle()).isEqualTo("on replica");
+            return taskService.markTaskAsCompleted(1L, null);
+        });
+
+        assertThat(jdbcTemplate.queryForObject("SELECT status FROM tasks WHERE id = 1", String.class)).isEqualTo("C");
+        assertThat(replicaStatus(1)).isEqualTo("P");
+    }
+
+    @Test
+    void versionConflictsAreCheckedOnThePrimary() {
+        // created on the primary and not replicated yet
+        jdbcTemplate.execute(insertTask(2, "new", 3));
+
+        assertThatThrownBy(() -> inRequest(() -> taskService.markTaskAsCompleted(2L, 1L)))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    // what spring.jpa.open-in-view does around every web request
+    private <T> T inRequest(Supplier<T> request) {
+        OpenEntityManagerInViewInterceptor openInView = new OpenEntityManagerInViewInterceptor();
+        openInView.setEntityManagerFactory(entityManagerFactory);
+        ServletWebRequest webRequest = new ServletWebRequest(new MockHttpServletRequest());
+        openInView.preHandle(webRequest);
+        try {
+            return request.get();
+        } finally {
+            openInView.afterCompletion(webRequest, null);
+        }
+    }
+
+    private String database(boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(readOnly);
+        transaction.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
+        return transaction.execute(status -> jdbcTemplate.queryForObject("SELECT DATABASE()", String.class));
+    }
+
+    private static String insertTask(long id, String title, long version) {
+        return "INSERT INTO tasks (id, title, status, created_date, version) VALUES ("
+                + id + ", '" + title + "', 'P', CURRENT_TIMESTAMP, " + version + ")";
+    }
+
+    private static String replicaStatus(long id) {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT status FROM tasks WHERE id = " + id)) {
+            result.next();
+            return result.getString(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void setReplicaLag(int seconds) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS replica_lag (seconds INT)");
+            statement.execute("DELETE FROM replica_lag");
+            statement.execute("INSERT INTO replica_lag VALUES (" + seconds + ")");
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.mongs.springazuredemo;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StartupReportTests {
+
+    @Test
+    void docsBeansAreLazyAndTheReportListsTheSlowestBeans() {
+        BufferingApplicationStartup startup = new BufferingApplicationStartup(1000);
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.setApplicationStartup(startup);
+            context.register(LazyDocsPostProcessor.class, SwaggerConfiguration.class);
+            context.refresh();
+
+            String report = StartupReport.report(startup.getBufferedTimeline().getEvents(), 20);
+            assertThat(report).contains("spring.context.refresh").contains("lazyDocsPostProcessor");
+
+            // created on first use only
+            assertThat(report).doesNotContain("myOpenAPI");
+            assertThat(context.getBeanFactory().containsSingleton("myOpenAPI")).isFalse();
+            assertThat(context.getBean("myOpenAPI")).isNotNull();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.mongs.springazuredemo;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the JDBC round trips of one-by-one creates against the batch path,
+ * TaskServiceBenchmark in the benchmarks module measures their wall time
+ */
+@DataJpaTest
+@Import({TaskService.class, TaskStatistics.class})
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50"
+})
+class TaskBatchTests {
+
+    private static final int TASK_COUNT = 1_000;
+    private static final int BATCH_SIZE = 50;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        taskRepository.deleteAllInBatch();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void batchCreateUsesFarFewerRoundTrips() {
+        newTasks().forEach(taskService::createTask);
+        long singleStatements = statistics.getPrepareStatementCount();
+
+        taskRepository.deleteAllInBatch();
+        statistics.clear();
+
+        List<BatchItemResult> results = taskService.createTasks(newTasks());
+        long batchStatements = statistics.getPrepareStatementCount();
+
+        assertThat(results).allMatch(result -> result.status() == BatchItemResult.Status.CREATED);
+        assertThat(taskRepository.count()).isEqualTo(TASK_COUNT);
+        // an insert per task against one sequence call and one insert batch per 50 tasks
+        assertThat(singleStatements).isGreaterThanOrEqualTo(TASK_COUNT);
+        assertThat(batchStatements).isLessThanOrEqualTo(2L * TASK_COUNT / BATCH_SIZE + 2);
+    }
+
+    @Test
+    void batchCreateReportsInvalidItems() {
+        Task valid = new Task();
+        valid.setTitle("valid");
+        Task invalid = new Task();
+
+        List<BatchItemResult> results = taskService.createTasks(List.of(valid, invalid));
+
+        assertThat(results).extracting(BatchItemResult::status)
+                .containsExactly(BatchItemResult.Status.CREATED, BatchItemResult.Status.INVALID);
+        assertThat(results.get(1).errors()).containsExactly("Title is mandatory");
+    }
+
+    @Test
+    void batchCreateReportsNullStatusPerItem() {
+        Task first = new Task();
+        first.setTitle("first");
+        Task withoutStatus = new Task();
+        withoutStatus.setTitle("without status");
+        withoutStatus.setStatus(null);
+        Task last = new Task();
+        last.setTitle("last");
+
+        List<BatchItemResult> results = taskService.createTasks(List.of(first, withoutStatus, last));
+
+        assertThat(results).extracting(BatchItemResult::status).containsExactly(BatchItemResult.Status.CREATED,
+                BatchItemResult.Status.INVALID, BatchItemResult.Status.CREATED);
+        assertThat(results.get(1).errors()).containsExactly("Status is mandatory");
+        assertThat(taskRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void batchCreateLeavesTheCallersTasksUnchanged() {
+        Task task = new Task();
+        task.setId(42L);
+        task.setTitle("copied");
+
+        List<BatchItemResult> results = taskService.createTasks(List.of(task));
+
+        assertThat(task.getId()).isEqualTo(42L);
+        assertThat(task.getVersion()).isNull();
+        assertThat(results.get(0).task()).isNotSameAs(task);
+        assertThat(results.get(0).task().getId()).isNotNull();
+    }
+
+    private static List<Task> newTasks() {
+        return IntStream.range(0, TASK_COUNT)
+                .mapToObj(i -> {
+                    Task task = new Task();
+                    task.setTitle("task " + i);
+                    return task;
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,65 @@
+package com.mongs.springazuredemo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@Import({TaskService.class, TaskStatistics.class})
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class TaskConditionalWriteTests {
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    private Task task;
+
+    @BeforeEach
+    void setUp() {
+        taskRepository.deleteAllInBatch();
+        Task newTask = new Task();
+        newTask.setTitle("versioned");
+        task = taskService.createTask(newTask);
+    }
+
+    @Test
+    void matchingVersionUpdatesAndBumpsVersion() {
+        Task completed = taskService.markTaskAsCompleted(task.getId(), task.getVersion());
+
+        assertThat(completed.getStatus()).isEqualTo(TaskStatus.COMPLETED);
+        assertThat(completed.getTitle()).isEqualTo("versioned");
+        assertThat(completed.getVersion()).isEqualTo(task.getVersion() + 1);
+    }
+
+    @Test
+    void staleVersionIsRejected() {
+        taskService.markTaskAsCompleted(task.getId(), task.getVersion());
+
+        assertThatThrownBy(() -> taskService.updateTask(task.getId(), task, task.getVersion()))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThatThrownBy(() -> taskService.deleteTask(task.getId(), task.getVersion()))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThat(taskRepository.existsById(task.getId())).isTrue();
+    }
+
+    @Test
+    void missingTaskIsNotFound() {
+        assertThatThrownBy(() -> taskService.deleteTask(-1L, 0L))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+}
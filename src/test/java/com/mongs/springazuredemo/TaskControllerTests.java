@@ -0,0 +1,149 @@
+package com.mongs.springazuredemo;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(TaskController.class)
+class TaskControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private TaskService taskService;
+
+    private final Task task = new Task(1L, "title", null, TaskStatus.PENDING, LocalDateTime.now(), 3L);
+
+    @Test
+    void getTaskEmitsVersionETag() throws Exception {
+        when(taskService.getTaskById(1L)).thenReturn(Optional.of(task));
+
+        mockMvc.perform(get("/api/tasks/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+    }
+
+    @Test
+    void matchingIfNoneMatchReturnsNotModified() throws Exception {
+        when(taskService.getTaskById(1L)).thenReturn(Optional.of(task));
+
+        mockMvc.perform(get("/api/tasks/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void matchingPageETagIsAnsweredWithoutLoadingThePage() throws Exception {
+        String eTag = TaskETags.of(List.of(TaskFields.of(task, Set.of())), null);
+        when(taskService.getPageETag(any(), any(), eq(50), isNull())).thenReturn(eTag);
+
+        mockMvc.perform(get("/api/tasks").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag));
+        verify(taskService, never()).getAllTasks(any(), any(), anyInt());
+
+        when(taskService.getAllTasks(any(), any(), eq(50))).thenReturn(new TaskPage(List.of(task), null));
+        mockMvc.perform(get("/api/tasks").header(HttpHeaders.IF_NONE_MATCH, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag));
+    }
+
+    @Test
+    void pageETagChangesWithVersions() {
+        Task updated = new Task(1L, "title", null, TaskStatus.COMPLETED, task.getCreatedDate(), 4L);
+        Task unversioned = new Task(1L, "title", null, TaskStatus.PENDING, task.getCreatedDate(), null);
+        Task versionZero = new Task(1L, "title", null, TaskStatus.PENDING, task.getCreatedDate(), 0L);
+
+        assertThat(pageETag(List.of(task), null)).isNotEqualTo(pageETag(List.of(updated), null));
+        assertThat(pageETag(List.of(task), null)).isNotEqualTo(pageETag(List.of(task), TaskField.parse("id")));
+        assertThat(pageETag(List.of(unversioned), null)).isEqualTo(pageETag(List.of(versionZero), null));
+    }
+
+    @Test
+    void taskWithoutVersionIsTaggedAsVersionZero() throws Exception {
+        Task unversioned = new Task(2L, "title", null, TaskStatus.PENDING, LocalDateTime.now(), null);
+        when(taskService.getTaskById(2L)).thenReturn(Optional.of(unversioned));
+
+        mockMvc.perform(get("/api/tasks/2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0\""));
+    }
+
+    @Test
+    void fieldsSelectsSparseTasks() throws Exception {
+        when(taskService.getAllTaskFields(any(), any(), eq(50), eq(TaskField.parse("id,title"))))
+                .thenReturn(new TaskFieldsPage(List.of(TaskFields.of(task, TaskField.parse("id,title"))), null));
+
+        mockMvc.perform(get("/api/tasks").param("fields", "title,id"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"items\":[{\"id\":1,\"title\":\"title\"}],\"nextCursor\":null}", true));
+        mockMvc.perform(get("/api/tasks").param("fields", "id,owner"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void sparsePageETagIsTheSameOnEveryInstance() {
+        Task unversioned = new Task(2L, "title", null, TaskStatus.PENDING, LocalDateTime.now(), null);
+
+        // pinned, a tag that differed between pods or restarts would never match If-None-Match
+        assertThat(pageETag(List.of(task, unversioned), TaskField.parse("id,title")))
+                .isEqualTo("\"6aa3e8012aca10bb41f51a34d486ab81\"");
+    }
+
+    @Test
+    void unknownStatusInBodyReturnsBadRequest() throws Exception {
+        mockMvc.perform(post("/api/tasks").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"title\",\"status\":\"archived\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Unknown task status: archived"));
+        mockMvc.perform(post("/api/tasks").contentType(MediaType.APPLICATION_JSON).content("{\"title\":"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void nullStatusInBodyReturnsBadRequest() throws Exception {
+        mockMvc.perform(post("/api/tasks").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"title\",\"status\":null}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errors[0]").value("Status is mandatory"));
+    }
+
+    private static String pageETag(List<Task> window, Set<TaskField> fields) {
+        return TaskETags.of(window.stream().map(task -> TaskFields.of(task, Set.of())).toList(), fields);
+    }
+
+    @Test
+    void staleIfMatchReturnsPreconditionFailed() throws Exception {
+        when(taskService.markTaskAsCompleted(1L, 2L))
+                .thenThrow(new PreconditionFailedException("Task 1 no longer matches version 2"));
+
+        mockMvc.perform(patch("/api/tasks/1/complete").header(HttpHeaders.IF_MATCH, "\"2\""))
+                .andExpect(status().isPreconditionFailed());
+    }
+}
@@ -0,0 +1,24 @@
+package com.mongs.springazuredemo;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TaskCursorTests {
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        TaskCursor cursor = new TaskCursor(LocalDateTime.of(2024, 5, 1, 10, 15, 30, 123456000), 42L);
+
+        assertThat(TaskCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void decodeRejectsGarbage() {
+        assertThatThrownBy(() -> TaskCursor.decode("not-a-cursor"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
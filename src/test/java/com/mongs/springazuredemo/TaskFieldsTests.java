@@ -0,0 +1,88 @@
+package com.mongs.springazuredemo;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@Import({TaskService.class, TaskStatistics.class})
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class TaskFieldsTests {
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("delete from tasks");
+        for (String title : List.of("first", "second", "third")) {
+            Task task = new Task();
+            task.setTitle(title);
+            task.setDescription("x".repeat(200));
+            taskService.createTask(task);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void pagesSelectOnlyTheRequestedFields() {
+        TaskFilter filter = new TaskFilter(null, null, null, Sort.Direction.ASC);
+
+        TaskFieldsPage first = taskService.getAllTaskFields(filter, null, 2, TaskField.parse("title,status"));
+        TaskFieldsPage second = taskService.getAllTaskFields(filter, first.nextCursor(), 2, TaskField.parse("title,status"));
+
+        assertThat(first.items()).extracting(TaskFields::values)
+                .extracting(values -> values.keySet().stream().toList())
+                .containsOnly(List.of("title", "status"));
+        assertThat(first.items()).extracting(task -> task.values().get("title")).containsExactly("first", "second");
+        assertThat(first.items().get(0).values()).containsEntry("status", TaskStatus.PENDING);
+        assertThat(second.items()).extracting(task -> task.values().get("title")).containsExactly("third");
+        assertThat(second.nextCursor()).isNull();
+        // plain values, nothing was loaded into the persistence context
+        assertThat(entityManager.unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+    }
+
+    @Test
+    void pageETagFollowsTheRowsOfThePage() {
+        TaskFilter filter = new TaskFilter(null, null, null, Sort.Direction.ASC);
+        List<Long> ids = jdbcTemplate.queryForList("select id from tasks order by created_date, id", Long.class);
+        String firstPage = taskService.getPageETag(filter, null, 1, null);
+        String longerPage = taskService.getPageETag(filter, null, 2, null);
+
+        // the third task is beyond the first page and the row deciding its next cursor
+        taskService.markTaskAsCompleted(ids.get(2), null);
+        assertThat(taskService.getPageETag(filter, null, 1, null)).isEqualTo(firstPage);
+        assertThat(taskService.getPageETag(filter, null, 2, null)).isNotEqualTo(longerPage);
+
+        taskService.markTaskAsCompleted(ids.get(0), null);
+        assertThat(taskService.getPageETag(filter, null, 1, null)).isNotEqualTo(firstPage);
+    }
+
+    @Test
+    void unknownFieldIsRejected() {
+        assertThatThrownBy(() -> TaskField.parse("id,owner")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TaskField.parse(" , ")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,134 @@
+package com.mongs.springazuredemo;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the listing queries TaskService actually runs are served by the composite
+ * indexes, by explaining the SQL Hibernate generates for them. TaskListingBenchmark in the
+ * benchmarks module measures how their latency holds up as the table grows.
+ */
+@DataJpaTest
+@Import({TaskService.class, TaskStatistics.class, TaskIndexTests.CapturedSql.class})
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        // criteria values rendered as literals, so the captured SQL can be explained as it is
+        "spring.jpa.properties.hibernate.criteria.value_handling_mode=inline"
+})
+class TaskIndexTests {
+
+    private static final int TASK_COUNT = 1_000;
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CapturedSql capturedSql;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("delete from tasks");
+        insertTasks();
+    }
+
+    @Test
+    void statusFilterUsesStatusIndex() {
+        TaskFilter filter = new TaskFilter(TaskStatus.PENDING, EPOCH, null, Sort.Direction.ASC);
+
+        TaskPage first = taskService.getAllTasks(filter, null, 50);
+        String firstPlan = explainLastQuery();
+        TaskPage second = taskService.getAllTasks(filter, first.nextCursor(), 50);
+        String secondPlan = explainLastQuery();
+
+        assertThat(first.items()).hasSize(50).allMatch(task -> task.getStatus() == TaskStatus.PENDING);
+        assertThat(second.items()).hasSize(50).allMatch(task -> task.getStatus() == TaskStatus.PENDING);
+        assertThat(firstPlan).containsIgnoringCase("IDX_TASKS_STATUS_CREATED");
+        assertThat(secondPlan).containsIgnoringCase("IDX_TASKS_STATUS_CREATED");
+    }
+
+    @Test
+    void dateOrderUsesCreatedIndex() {
+        TaskFilter filter = new TaskFilter(null, EPOCH, null, Sort.Direction.DESC);
+
+        TaskPage first = taskService.getAllTasks(filter, null, 50);
+        String firstPlan = explainLastQuery();
+        TaskPage second = taskService.getAllTasks(filter, first.nextCursor(), 50);
+        String secondPlan = explainLastQuery();
+
+        assertThat(first.items()).hasSize(50);
+        assertThat(second.items()).hasSize(50);
+        assertThat(firstPlan).containsIgnoringCase("IDX_TASKS_CREATED");
+        assertThat(secondPlan).containsIgnoringCase("IDX_TASKS_CREATED");
+    }
+
+    private String explainLastQuery() {
+        String sql = capturedSql.last();
+        assertThat(sql).startsWithIgnoringCase("select").contains("tasks");
+        // the page size is the one value Hibernate still binds
+        return jdbcTemplate.queryForObject("explain " + sql, String.class, 51);
+    }
+
+    private void insertTasks() {
+        List<Object[]> rows = new ArrayList<>(TASK_COUNT);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            // a third of the rows are pending, the rest are spread over the other states
+            String status = switch (i % 3) {
+                case 0 -> TaskStatus.PENDING.getCode();
+                case 1 -> TaskStatus.IN_PROGRESS.getCode();
+                default -> TaskStatus.COMPLETED.getCode();
+            };
+            rows.add(new Object[]{1_000_000L + i, "task " + i, status, Timestamp.valueOf(EPOCH.plusSeconds(i))});
+        }
+        jdbcTemplate.batchUpdate(
+                "insert into tasks (id, title, status, created_date, version) values (?, ?, ?, ?, 0)", rows);
+    }
+
+    /**
+     * Remembers the last statement Hibernate prepared
+     */
+    @TestConfiguration
+    static class CapturedSql {
+        private volatile String last;
+
+        @Bean
+        HibernatePropertiesCustomizer captureSql() {
+            StatementInspector inspector = sql -> {
+                last = sql;
+                return sql;
+            };
+            return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, inspector);
+        }
+
+        String last() {
+            return last;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.mongs.springazuredemo;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@DataJpaTest
+@Import({TaskService.class, TaskStatistics.class, TaskIngestPipeline.class})
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "app.tasks.ingest.enabled=true",
+        "app.tasks.ingest.queue-capacity=300",
+        "app.tasks.ingest.max-wait=200ms"
+})
+class TaskIngestPipelineTests {
+
+    private static final int CONCURRENT_CREATES = 200;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskIngestPipeline ingestPipeline;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockitoSpyBean
+    private TaskStatistics taskStatistics;
+
+    private final CountDownLatch writerBlocked = new CountDownLatch(1);
+    private final CountDownLatch releaseWriter = new CountDownLatch(1);
+
+    @Test
+    void concurrentCreatesShareCommits() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        ExecutorService callers = Executors.newFixedThreadPool(CONCURRENT_CREATES);
+        try {
+            List<CompletableFuture<Task>> created = IntStream.range(0, CONCURRENT_CREATES)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(() -> taskService.createTask(newTask("task " + i)), callers))
+                    .toList();
+
+            List<Long> ids = created.stream().map(CompletableFuture::join).map(Task::getId).toList();
+
+            assertThat(ids).doesNotContainNull().doesNotHaveDuplicates();
+            assertThat(statistics.getSuccessfulTransactionCount()).isLessThan(CONCURRENT_CREATES / 5);
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    void saturatedQueueRejectsImmediately() throws InterruptedException {
+        blockWriter();
+        List<CompletableFuture<Task>> accepted = IntStream.range(0, 300)
+                .mapToObj(i -> ingestPipeline.submit(newTask("queued " + i)))
+                .toList();
+        writerBlocked.await();
+
+        // nothing can complete while the writer is held, so every permit is still taken
+        assertThatThrownBy(() -> ingestPipeline.submit(newTask("rejected")))
+                .isInstanceOf(TaskIngestRejectedException.class);
+
+        releaseWriter.countDown();
+        CompletableFuture.allOf(accepted.toArray(CompletableFuture[]::new)).join();
+        assertThat(taskRepository.findAll()).extracting(Task::getTitle).doesNotContain("rejected");
+    }
+
+    @Test
+    void timedOutCreateIsNeverCommitted() throws InterruptedException {
+        Duration submitTimeout = (Duration) ReflectionTestUtils.getField(ingestPipeline, "submitTimeout");
+        ReflectionTestUtils.setField(ingestPipeline, "submitTimeout", Duration.ofMillis(100));
+        try {
+            blockWriter();
+            CompletableFuture<Task> blocker = ingestPipeline.submit(newTask("blocker"));
+            writerBlocked.await();
+
+            assertThatThrownBy(() -> ingestPipeline.create(newTask("timed out")))
+                    .isInstanceOf(TaskIngestRejectedException.class);
+
+            releaseWriter.countDown();
+            blocker.join();
+            // the writer is single and FIFO, so once this commits the timed out task has been passed over
+            ingestPipeline.submit(newTask("after")).join();
+            assertThat(taskRepository.findAll()).extracting(Task::getTitle)
+                    .contains("blocker", "after")
+                    .doesNotContain("timed out");
+        } finally {
+            ReflectionTestUtils.setField(ingestPipeline, "submitTimeout", submitTimeout);
+        }
+    }
+
+    @Test
+    void stoppedPipelineRejectsSubmits() throws InterruptedException {
+        TaskIngestPipeline pipeline = new TaskIngestPipeline(taskRepository, taskStatistics, transactionTemplate,
+                entityManagerFactory.createEntityManager());
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 10);
+        ReflectionTestUtils.setField(pipeline, "maxBatch", 10);
+        ReflectionTestUtils.setField(pipeline, "maxWait", Duration.ofMillis(5));
+        pipeline.start();
+        pipeline.stop();
+
+        assertThatThrownBy(() -> pipeline.submit(newTask("late")))
+                .isInstanceOf(TaskIngestRejectedException.class);
+    }
+
+    private void blockWriter() {
+        doAnswer(invocation -> {
+            writerBlocked.countDown();
+            releaseWriter.await();
+            return invocation.callRealMethod();
+        }).when(taskStatistics).recordCreated(any());
+    }
+
+    private static Task newTask(String title) {
+        Task task = new Task();
+        task.setTitle(title);
+        return task;
+    }
+}
@@ -0,0 +1,95 @@
+package com.mongs.springazuredemo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.cache.CacheMetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.cache.CacheType;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.core.AutoConfigureCache;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import({TaskService.class, TaskStatistics.class})
+@ImportAutoConfiguration({ValidationAutoConfiguration.class, MetricsAutoConfiguration.class,
+        SimpleMetricsExportAutoConfiguration.class, CompositeMeterRegistryAutoConfiguration.class,
+        CacheMetricsAutoConfiguration.class})
+@AutoConfigureCache(cacheProvider = CacheType.CAFFEINE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class TaskServiceCacheTests {
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Long id;
+
+    @BeforeEach
+    void setUp() {
+        taskRepository.deleteAllInBatch();
+        Task task = new Task();
+        task.setTitle("cached");
+        id = taskService.createTask(task).getId();
+    }
+
+    @Test
+    void repeatedLookupsHitTheCache() {
+        cacheManager.getCache(TaskService.TASK_CACHE).clear();
+        double hits = cacheGets("hit");
+        double misses = cacheGets("miss");
+
+        taskService.getTaskById(id);
+        taskService.getTaskById(id);
+
+        assertThat(cacheGets("hit") - hits).isEqualTo(1);
+        assertThat(cacheGets("miss") - misses).isEqualTo(1);
+    }
+
+    @Test
+    void createdTaskIsCached() {
+        double hits = cacheGets("hit");
+        double misses = cacheGets("miss");
+
+        assertThat(taskService.getTaskById(id)).get().extracting(Task::getTitle).isEqualTo("cached");
+
+        assertThat(cacheGets("hit") - hits).isEqualTo(1);
+        assertThat(cacheGets("miss") - misses).isZero();
+    }
+
+    @Test
+    void writesRefreshOrEvictTheCachedTask() {
+        taskService.getTaskById(id);
+
+        taskService.markTaskAsCompleted(id, null);
+        assertThat(taskService.getTaskById(id)).get().extracting(Task::getStatus).isEqualTo(TaskStatus.COMPLETED);
+
+        taskService.deleteTask(id, null);
+        assertThat(taskService.getTaskById(id)).isEmpty();
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", TaskService.TASK_CACHE).tag("result", result)
+                .functionCounter().count();
+    }
+}
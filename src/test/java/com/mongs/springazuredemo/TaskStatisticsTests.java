@@ -0,0 +1,85 @@
+package com.mongs.springazuredemo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import({TaskService.class, TaskStatistics.class})
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class TaskStatisticsTests {
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskStatistics taskStatistics;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("delete from tasks");
+        taskStatistics.reconcile();
+    }
+
+    @Test
+    void writesMoveTheCounters() {
+        Task first = taskService.createTask(newTask("first"));
+        Task second = taskService.createTask(newTask("second"));
+        taskService.createTasks(List.of(newTask("third")));
+
+        taskService.markTaskAsCompleted(first.getId(), null);
+        taskService.deleteTask(second.getId(), null);
+
+        assertThat(byStatus()).containsEntry("pending", 1L).containsEntry("completed", 1L);
+        assertThat(createdPerDay()).containsEntry(LocalDate.now(), 2L);
+    }
+
+    @Test
+    void reconcileCorrectsDrift() {
+        taskService.createTask(newTask("tracked"));
+        jdbcTemplate.update("insert into tasks (id, title, status, created_date, version) "
+                + "values (-1, 'untracked', 'C', current_timestamp, 0)");
+
+        assertThat(byStatus()).containsEntry("completed", 0L);
+
+        taskStatistics.reconcile();
+
+        assertThat(byStatus()).containsEntry("pending", 1L).containsEntry("completed", 1L);
+        assertThat(createdPerDay()).containsEntry(LocalDate.now(), 2L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Long> byStatus() {
+        return (Map<String, Long>) taskService.getStats().get("byStatus");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<LocalDate, Long> createdPerDay() {
+        return (Map<LocalDate, Long>) taskService.getStats().get("createdPerDay");
+    }
+
+    private static Task newTask(String title) {
+        Task task = new Task();
+        task.setTitle(title);
+        return task;
+    }
+}
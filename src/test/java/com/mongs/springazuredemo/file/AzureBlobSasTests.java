@@ -0,0 +1,71 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.BlobProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Uploads and downloads through signed URLs against Azurite, without going through the
+ * application, e.g. AZURITE_BLOB_ENDPOINT=http://127.0.0.1:10000/devstoreaccount1
+ */
+@EnabledIfEnvironmentVariable(named = "AZURITE_BLOB_ENDPOINT", matches = ".+")
+@SpringBootTest(classes = {AzureBlobConfig.class, AzureBlobService.class}, properties = {
+        "spring.cloud.azure.storage.blob.endpoint=${AZURITE_BLOB_ENDPOINT}",
+        "spring.cloud.azure.storage.blob.account-name=devstoreaccount1",
+        // the well-known Azurite development key
+        "spring.cloud.azure.storage.blob.account-key=Eby8vdM02xNOcqFlqUwJPLlmEtlCDXJ1OUzFT50uSRZ6IFsuFq2UVErCz4I6tq/K1SZFPTOtr/KBHBeksoGMGw==",
+        "spring.cloud.azure.storage.blob.container-name=signed"
+})
+class AzureBlobSasTests {
+
+    private static final byte[] CONTENT = "not really a png".getBytes(StandardCharsets.US_ASCII);
+
+    @Autowired
+    private AzureBlobService azureBlobService;
+
+    @Autowired
+    private BlobServiceClient blobServiceClient;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() {
+        blobServiceClient.getBlobContainerClient("signed").createIfNotExists();
+    }
+
+    @Test
+    void clientsTransferStraightToStorage() throws Exception {
+        SignedUrl upload = azureBlobService.createUploadUrl("photo.png", null);
+        HttpRequest.Builder put = HttpRequest.newBuilder(URI.create(upload.url()))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(CONTENT));
+        upload.headers().forEach(put::header);
+        assertThat(httpClient.send(put.build(), HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(201);
+
+        // the upload URL only creates, it cannot overwrite what was just uploaded
+        assertThat(httpClient.send(put.build(), HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(403);
+
+        String url = azureBlobService.completeUpload(upload.blobName());
+        assertThat(azureBlobService.getBlobNameFromUrl(url)).isEqualTo(upload.blobName());
+        BlobProperties properties = azureBlobService.getProperties(upload.blobName());
+        assertThat(properties.getContentType()).isEqualTo("image/png");
+        assertThat(properties.getMetadata()).containsEntry("originalFilename", "photo.png");
+
+        SignedUrl download = azureBlobService.createDownloadUrl(upload.blobName());
+        HttpResponse<byte[]> response = httpClient.send(
+                HttpRequest.newBuilder(URI.create(download.url())).build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).isEqualTo(CONTENT);
+    }
+}
@@ -0,0 +1,195 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.core.util.polling.LongRunningOperationStatus;
+import com.azure.core.util.polling.PollResponse;
+import com.azure.core.util.polling.SyncPoller;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.BlobCopyInfo;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobProperties;
+import com.mongs.springazuredemo.ResourceNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(classes = AzureBlobService.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@TestPropertySource(properties = {
+        "spring.cloud.azure.storage.blob.container-name=images",
+        "app.azure.blob.upload.content-addressed=true"
+})
+class AzureBlobServiceTests {
+
+    // sha-256 of "logo"
+    private static final String LOGO_DIGEST = "3598ce6f965b2481fe26316c06b30950c46ac7f8e7229f104aa78f579997668d";
+    private static final String ISSUED_NAME = "0b0f4d1e-6c1a-4f3e-9a53-4b1f0c2d8e7a.png";
+
+    @Autowired
+    private AzureBlobService azureBlobService;
+
+    @MockitoBean
+    private BlobServiceClient blobServiceClient;
+
+    private final BlobContainerClient container = mock(BlobContainerClient.class);
+    private final BlobClient blob = mock(BlobClient.class);
+
+    @BeforeEach
+    void setUp() {
+        when(blobServiceClient.getBlobContainerClient("images")).thenReturn(container);
+        when(container.getBlobClient(any())).thenReturn(blob);
+    }
+
+    @Test
+    void identicalContentIsUploadedOnce() {
+        when(blob.exists()).thenReturn(false, true);
+        when(blob.getBlobUrl()).thenReturn("https://account.blob.core.windows.net/images/digest.png");
+
+        String first = azureBlobService.uploadImage(logo("logo.PNG"));
+        String second = azureBlobService.uploadImage(logo("copy-of-logo.png"));
+
+        assertThat(second).isEqualTo(first);
+        verify(container, times(2)).getBlobClient(LOGO_DIGEST + ".png");
+        verify(blob, times(1)).uploadWithResponse(any(), any(), any());
+        MeterRegistry registry = new SimpleMeterRegistry();
+        azureBlobService.bindTo(registry);
+        assertThat(registry.get("blob.uploads").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("blob.uploads.deduplicated").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("blob.uploads.saved").functionCounter().count()).isEqualTo(4);
+    }
+
+    @Test
+    void existingContentIsNotTransferred() {
+        when(blob.exists()).thenReturn(true);
+
+        azureBlobService.uploadImage(logo("logo.png"));
+
+        verify(blob, never()).uploadWithResponse(any(), any(), any());
+    }
+
+    @Test
+    void signedUploadUrlsCanOnlyCreateTheBlob() {
+        when(blob.getBlobUrl()).thenReturn("https://account.blob.core.windows.net/images/name.png");
+        when(blob.generateSas(any(BlobServiceSasSignatureValues.class))).thenReturn("sv=2024&sig=abc");
+
+        SignedUrl signedUrl = azureBlobService.createUploadUrl("logo.png", null);
+
+        ArgumentCaptor<BlobServiceSasSignatureValues> values = ArgumentCaptor.forClass(BlobServiceSasSignatureValues.class);
+        verify(blob).generateSas(values.capture());
+        assertThat(values.getValue().getPermissions()).isEqualTo("c");
+        assertThat(signedUrl.blobName()).endsWith(".png");
+        verify(container).getBlobClient("pending/" + signedUrl.blobName());
+        assertThat(signedUrl.url()).isEqualTo("https://account.blob.core.windows.net/images/name.png?sv=2024&sig=abc");
+        assertThat(signedUrl.headers())
+                .containsEntry("x-ms-blob-type", "BlockBlob")
+                .containsEntry("x-ms-blob-content-type", "image/png");
+    }
+
+    @Test
+    void emptySignedUploadsAreRemovedOnCompletion() {
+        BlobProperties properties = mock(BlobProperties.class);
+        when(properties.getBlobSize()).thenReturn(0L);
+        when(blob.getProperties()).thenReturn(properties);
+
+        assertThatThrownBy(() -> azureBlobService.completeUpload(ISSUED_NAME))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("File cannot be null or empty");
+        verify(container, atLeastOnce()).getBlobClient("pending/" + ISSUED_NAME);
+        verify(blob).deleteIfExists();
+        verify(blob, never()).beginCopy(anyString(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void completionMovesTheUploadOutOfPendingWithTheContentTypeOfItsName() {
+        BlobProperties properties = mock(BlobProperties.class);
+        when(properties.getBlobSize()).thenReturn(4L);
+        when(blob.getProperties()).thenReturn(properties);
+        when(blob.getBlobUrl()).thenReturn("https://account.blob.core.windows.net/images/" + ISSUED_NAME);
+        SyncPoller<BlobCopyInfo, Void> copy = mock(SyncPoller.class);
+        when(copy.waitForCompletion(Duration.ofSeconds(30)))
+                .thenReturn(new PollResponse<>(LongRunningOperationStatus.SUCCESSFULLY_COMPLETED, null));
+        when(blob.beginCopy(anyString(), any())).thenReturn(copy);
+
+        azureBlobService.completeUpload(ISSUED_NAME);
+
+        verify(container).getBlobClient(ISSUED_NAME);
+        //the headers are replaced on the staged blob, the copy then carries them
+        InOrder order = inOrder(blob);
+        ArgumentCaptor<BlobHttpHeaders> headers = ArgumentCaptor.forClass(BlobHttpHeaders.class);
+        order.verify(blob).setHttpHeaders(headers.capture());
+        order.verify(blob).beginCopy(anyString(), any());
+        assertThat(headers.getValue().getContentType()).isEqualTo("image/png");
+        verify(blob).deleteIfExists();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void stuckCopyIsAbortedAndTheUploadStaysPending() {
+        BlobProperties properties = mock(BlobProperties.class);
+        when(properties.getBlobSize()).thenReturn(4L);
+        when(blob.getProperties()).thenReturn(properties);
+        when(blob.getBlobUrl()).thenReturn("https://account.blob.core.windows.net/images/pending/" + ISSUED_NAME);
+        SyncPoller<BlobCopyInfo, Void> copy = mock(SyncPoller.class);
+        when(copy.waitForCompletion(any(Duration.class))).thenThrow(new RuntimeException(new TimeoutException()));
+        when(blob.beginCopy(anyString(), any())).thenReturn(copy);
+
+        assertThatThrownBy(() -> azureBlobService.completeUpload(ISSUED_NAME))
+                .hasMessageStartingWith("Timed out completing upload " + ISSUED_NAME);
+        verify(copy).cancelOperation();
+        //only the copy destination, the staged blob is kept for a retry
+        verify(blob, times(1)).deleteIfExists();
+    }
+
+    @Test
+    void onlyIssuedNamesCanBeCompleted() {
+        assertThatThrownBy(() -> azureBlobService.completeUpload("name.png"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> azureBlobService.completeUpload("../" + ISSUED_NAME))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(blob, never()).getProperties();
+    }
+
+    @Test
+    void pendingUploadsAreNeverServed() {
+        when(blobServiceClient.getAccountUrl()).thenReturn("https://account.blob.core.windows.net");
+
+        assertThatThrownBy(() -> azureBlobService.createDownloadUrl("pending/" + ISSUED_NAME))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThatThrownBy(() -> azureBlobService.getBlobNameFromUrl(
+                "https://account.blob.core.windows.net/images/pending/" + ISSUED_NAME))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(blob, never()).generateSas(any(BlobServiceSasSignatureValues.class));
+    }
+
+    private static MockMultipartFile logo(String fileName) {
+        return new MockMultipartFile("file", fileName, "image/png", "logo".getBytes(StandardCharsets.US_ASCII));
+    }
+}
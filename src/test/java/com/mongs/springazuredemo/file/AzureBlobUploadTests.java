@@ -0,0 +1,57 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.BlobProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The parallel block upload against Azurite, e.g. AZURITE_BLOB_ENDPOINT=http://127.0.0.1:10000/devstoreaccount1.
+ * Its latency is measured by AzureBlobUploadBenchmark in the benchmarks module.
+ */
+@EnabledIfEnvironmentVariable(named = "AZURITE_BLOB_ENDPOINT", matches = ".+")
+@SpringBootTest(classes = {AzureBlobConfig.class, AzureBlobService.class}, properties = {
+        "spring.cloud.azure.storage.blob.endpoint=${AZURITE_BLOB_ENDPOINT}",
+        "spring.cloud.azure.storage.blob.account-name=devstoreaccount1",
+        // the well-known Azurite development key
+        "spring.cloud.azure.storage.blob.account-key=Eby8vdM02xNOcqFlqUwJPLlmEtlCDXJ1OUzFT50uSRZ6IFsuFq2UVErCz4I6tq/K1SZFPTOtr/KBHBeksoGMGw==",
+        "spring.cloud.azure.storage.blob.container-name=uploads"
+})
+class AzureBlobUploadTests {
+
+    // one below max-single-upload-size, one staged as four blocks
+    private static final int[] FILE_SIZES = {1 << 20, 16 << 20};
+
+    @Autowired
+    private AzureBlobService azureBlobService;
+
+    @Autowired
+    private BlobServiceClient blobServiceClient;
+
+    @Test
+    void uploadCommitsContentHeadersAndMetadataTogether() {
+        blobServiceClient.getBlobContainerClient("uploads").createIfNotExists();
+        Random random = new Random(42);
+        for (int size : FILE_SIZES) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            MockMultipartFile file = new MockMultipartFile("file", "photo.png", "image/png", content);
+
+            String blobName = azureBlobService.getBlobNameFromUrl(azureBlobService.uploadImage(file));
+
+            BlobProperties properties = azureBlobService.getProperties(blobName);
+            assertThat(properties.getBlobSize()).isEqualTo(size);
+            assertThat(properties.getContentType()).isEqualTo("image/png");
+            assertThat(properties.getMetadata()).containsEntry("originalFilename", "photo.png");
+            assertThat(blobServiceClient.getBlobContainerClient("uploads").getBlobClient(blobName)
+                    .downloadContent().toBytes()).isEqualTo(content);
+        }
+    }
+}
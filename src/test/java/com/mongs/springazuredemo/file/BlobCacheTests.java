@@ -0,0 +1,268 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.storage.blob.models.BlobDownloadHeaders;
+import com.azure.storage.blob.models.BlobProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(classes = BlobCache.class)
+@TestPropertySource(properties = {
+        "app.azure.blob.cache.heap-max-size=16B",
+        "app.azure.blob.cache.heap-max-entry-size=10B",
+        "app.azure.blob.cache.disk-max-size=64B",
+        "app.azure.blob.cache.disk-max-entry-size=32B"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class BlobCacheTests {
+
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void cacheDirectory(DynamicPropertyRegistry registry) {
+        registry.add("app.azure.blob.cache.directory", directory::toString);
+    }
+
+    @Autowired
+    private BlobCache blobCache;
+
+    @MockitoBean
+    private AzureBlobService azureBlobService;
+
+    @BeforeEach
+    void setUp() {
+        stubStorage(azureBlobService);
+    }
+
+    @Test
+    void repeatedReadsAreServedLocally() throws Exception {
+        assertThat(read(blobCache, "small")).isEqualTo("small");
+        assertThat(read(blobCache, "small")).isEqualTo("small");
+        assertThat(read(blobCache, "larger-than-heap-entry")).isEqualTo("larger-than-heap-entry");
+        assertThat(read(blobCache, "larger-than-heap-entry")).isEqualTo("larger-than-heap-entry");
+
+        verify(azureBlobService, times(1)).downloadIfChanged(eq("small"), any(), any());
+        verify(azureBlobService, times(1)).downloadIfChanged(eq("larger-than-heap-entry"), any(), any());
+        assertThat(meter(blobCache, "blob.cache.gets", "result", "hit")).isEqualTo(2);
+        assertThat(meter(blobCache, "blob.cache.gets", "result", "miss")).isEqualTo(2);
+        assertThat(meter(blobCache, "blob.cache.served")).isEqualTo(27);
+        assertThat(meter(blobCache, "blob.cache.entries", "tier", "heap")).isEqualTo(1);
+        assertThat(meter(blobCache, "blob.cache.entries", "tier", "disk")).isEqualTo(1);
+        assertThat(meter(blobCache, "blob.cache.size", "tier", "disk")).isEqualTo(22);
+    }
+
+    @Test
+    void heapEvictionsMoveToDisk() throws Exception {
+        read(blobCache, "first-1");
+        read(blobCache, "second2");
+        read(blobCache, "third-3");
+
+        assertThat(meter(blobCache, "blob.cache.evictions", "tier", "heap")).isEqualTo(1);
+        assertThat(meter(blobCache, "blob.cache.entries", "tier", "heap")).isEqualTo(2);
+        assertThat(meter(blobCache, "blob.cache.entries", "tier", "disk")).isEqualTo(1);
+        assertThat(read(blobCache, "first-1")).isEqualTo("first-1");
+        verify(azureBlobService, times(1)).downloadIfChanged(eq("first-1"), any(), any());
+    }
+
+    @Test
+    void diskTierEvictsLeastRecentlyUsed() throws Exception {
+        read(blobCache, "aaaaaaaaaaaaaaaaaaaaaaaa");
+        read(blobCache, "bbbbbbbbbbbbbbbbbbbbbbbb");
+        read(blobCache, "aaaaaaaaaaaaaaaaaaaaaaaa");
+        read(blobCache, "cccccccccccccccccccccccc");
+
+        assertThat(meter(blobCache, "blob.cache.evictions", "tier", "disk")).isEqualTo(1);
+        assertThat(meter(blobCache, "blob.cache.entries", "tier", "disk")).isEqualTo(2);
+        read(blobCache, "aaaaaaaaaaaaaaaaaaaaaaaa");
+        read(blobCache, "bbbbbbbbbbbbbbbbbbbbbbbb");
+        verify(azureBlobService, times(1)).downloadIfChanged(eq("aaaaaaaaaaaaaaaaaaaaaaaa"), any(), any());
+        verify(azureBlobService, times(2)).downloadIfChanged(eq("bbbbbbbbbbbbbbbbbbbbbbbb"), any(), any());
+        assertThat(cachedFiles()).isEqualTo(2);
+    }
+
+    @Test
+    void evictedEntryStillServesReadsThatLookedItUp() throws Exception {
+        String blobName = "aaaaaaaaaaaaaaaaaaaaaaaa";
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(3).write(content(blobName));
+            return null;
+        }).when(azureBlobService).download(eq(blobName), anyLong(), any(), any());
+        read(blobCache, blobName);
+        BlobSource inFlight = blobCache.get(blobName);
+
+        read(blobCache, "bbbbbbbbbbbbbbbbbbbbbbbb");
+        read(blobCache, "cccccccccccccccccccccccc");
+
+        // the file is unmapped and deleted, the read falls back to storage
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        inFlight.writeTo(out, 0, inFlight.size());
+        assertThat(out.toString(StandardCharsets.US_ASCII)).isEqualTo(blobName);
+        verify(azureBlobService).download(eq(blobName), eq(0L), eq(24L), any());
+        assertThat(cachedFiles()).isEqualTo(2);
+    }
+
+    @Test
+    void blobsAboveTheEntryLimitAreStreamed() throws Exception {
+        String blobName = "x".repeat(40);
+
+        assertThat(blobCache.get(blobName).size()).isEqualTo(40);
+
+        verify(azureBlobService, times(0)).downloadIfChanged(anyString(), any(), any());
+        assertThat(meter(blobCache, "blob.cache.entries", "tier", "heap")).isZero();
+        assertThat(meter(blobCache, "blob.cache.entries", "tier", "disk")).isZero();
+    }
+
+    @Test
+    void blobReplacedBeforeItsFirstReadIsNotSentUnderTheOldHeaders() throws Exception {
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(2).write("SMALLER".getBytes(StandardCharsets.US_ASCII));
+            return new BlobDownloadHeaders().setETag("etag-2");
+        }).when(azureBlobService).downloadIfChanged(eq("small"), isNull(), any());
+        BlobSource stale = blobCache.get("small");
+
+        assertThatThrownBy(() -> stale.writeTo(new ByteArrayOutputStream(), 0, stale.size()))
+                .isInstanceOf(IOException.class)
+                .hasMessage("small changed while it was being served");
+        // the replaced blob is cached under its own size and ETag
+        BlobSource current = blobCache.get("small");
+        assertThat(current.size()).isEqualTo(7);
+        assertThat(current.etag()).isEqualTo("etag-2");
+    }
+
+    @Test
+    void rangesPastACachedBlobAreRejected() throws Exception {
+        read(blobCache, "small");
+        BlobSource cached = blobCache.get("small");
+
+        assertThatThrownBy(() -> cached.writeTo(new ByteArrayOutputStream(), 3, 3))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> cached.writeTo(new ByteArrayOutputStream(), Integer.MAX_VALUE + 1L, 1))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Nested
+    @TestPropertySource(properties = "app.azure.blob.cache.revalidate-after=0s")
+    class Revalidation {
+
+        // the outer fields belong to the outer context, this class has its own
+        @Autowired
+        private BlobCache blobCache;
+
+        @Autowired
+        private AzureBlobService azureBlobService;
+
+        @BeforeEach
+        void setUp() {
+            stubStorage(azureBlobService);
+        }
+
+        @Test
+        void unchangedBlobIsNotDownloadedAgain() throws Exception {
+            doReturn(null).when(azureBlobService).downloadIfChanged(eq("small"), eq("etag-small"), any());
+            read(blobCache, "small");
+
+            assertThat(read(blobCache, "small")).isEqualTo("small");
+
+            verify(azureBlobService).downloadIfChanged(eq("small"), eq("etag-small"), any());
+            assertThat(meter(blobCache, "blob.cache.gets", "result", "hit")).isEqualTo(1);
+            assertThat(meter(blobCache, "blob.cache.revalidations")).isEqualTo(1);
+        }
+
+        @Test
+        void changedBlobReplacesTheEntry() throws Exception {
+            doAnswer(invocation -> {
+                invocation.<OutputStream>getArgument(2).write("SMALL".getBytes(StandardCharsets.US_ASCII));
+                return new BlobDownloadHeaders().setETag("etag-2");
+            }).when(azureBlobService).downloadIfChanged(eq("small"), eq("etag-small"), any());
+            read(blobCache, "small");
+
+            assertThat(read(blobCache, "small")).isEqualTo("SMALL");
+            assertThat(blobCache.get("small").etag()).isEqualTo("etag-2");
+        }
+
+        @Test
+        void grownBlobMovesToTheDiskTier() throws Exception {
+            String grown = "small, grown past 10B";
+            doAnswer(invocation -> {
+                invocation.<OutputStream>getArgument(2).write(content(grown));
+                return new BlobDownloadHeaders().setETag("etag-2");
+            }).when(azureBlobService).downloadIfChanged(eq("small"), eq("etag-small"), any());
+            read(blobCache, "small");
+
+            assertThat(read(blobCache, "small")).isEqualTo(grown);
+            assertThat(meter(blobCache, "blob.cache.entries", "tier", "heap")).isZero();
+            assertThat(meter(blobCache, "blob.cache.entries", "tier", "disk")).isEqualTo(1);
+        }
+    }
+
+    private static double meter(BlobCache blobCache, String name, String... tags) {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        blobCache.bindTo(registry);
+        return registry.get(name).tags(tags).meter().measure().iterator().next().getValue();
+    }
+
+    // every blob's content is its own name, which keeps sizes obvious in the tests
+    private static void stubStorage(AzureBlobService azureBlobService) {
+        when(azureBlobService.getProperties(anyString())).thenAnswer(invocation -> {
+            BlobProperties properties = mock(BlobProperties.class);
+            when(properties.getBlobSize()).thenReturn((long) content(invocation.getArgument(0)).length);
+            when(properties.getETag()).thenReturn("etag-" + invocation.getArgument(0));
+            return properties;
+        });
+        doAnswer(invocation -> {
+            String blobName = invocation.getArgument(0);
+            invocation.<OutputStream>getArgument(2).write(content(blobName));
+            return new BlobDownloadHeaders().setETag("etag-" + blobName);
+        }).when(azureBlobService).downloadIfChanged(anyString(), isNull(), any());
+    }
+
+    private static long cachedFiles() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static byte[] content(String blobName) {
+        return blobName.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String read(BlobCache blobCache, String blobName) throws Exception {
+        BlobSource blob = blobCache.get(blobName);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        blob.writeTo(out, 0, blob.size());
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,88 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.util.Context;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlobMetricsPolicyTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final HttpPipeline pipeline = new HttpPipelineBuilder()
+            .httpClient(request -> Mono.just(response(request)))
+            .policies(new BlobMetricsPolicy(registry))
+            .build();
+
+    @Test
+    void recordsLatencyBytesAndErrorsPerOperation() {
+        HttpRequest upload = new HttpRequest(HttpMethod.PUT,
+                "https://account.blob.core.windows.net/images/a.png?comp=block&blockid=AAAA")
+                .setHeader("Content-Length", "1024");
+        pipeline.sendSync(upload, Context.NONE).close();
+        pipeline.send(new HttpRequest(HttpMethod.GET, "https://account.blob.core.windows.net/images/a.png")).block().close();
+        pipeline.send(new HttpRequest(HttpMethod.HEAD, "https://account.blob.core.windows.net/images/missing.png")).block().close();
+
+        assertThat(registry.get("azure.blob.requests").tag("operation", "put-block").tag("outcome", "SUCCESS").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("azure.blob.requests").tag("operation", "get-properties").tag("status", "404")
+                .tag("outcome", "CLIENT_ERROR").timer().count()).isEqualTo(1);
+        assertThat(registry.get("azure.blob.transferred").tag("direction", "upload").counter().count()).isEqualTo(1024);
+        assertThat(registry.get("azure.blob.transferred").tag("operation", "get-blob").tag("direction", "download")
+                .counter().count()).isEqualTo(2048);
+    }
+
+    private static HttpResponse response(HttpRequest request) {
+        boolean missing = request.getUrl().getPath().endsWith("missing.png");
+        HttpHeaders headers = new HttpHeaders().set("Content-Length", "2048");
+        return new HttpResponse(request) {
+            @Override
+            public int getStatusCode() {
+                return missing ? 404 : 200;
+            }
+
+            @Override
+            @SuppressWarnings("deprecation")
+            public String getHeaderValue(String name) {
+                return headers.getValue(name);
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+
+            @Override
+            public Flux<ByteBuffer> getBody() {
+                return Flux.empty();
+            }
+
+            @Override
+            public Mono<byte[]> getBodyAsByteArray() {
+                return Mono.just(new byte[0]);
+            }
+
+            @Override
+            public Mono<String> getBodyAsString() {
+                return Mono.just("");
+            }
+
+            @Override
+            public Mono<String> getBodyAsString(Charset charset) {
+                return Mono.just("");
+            }
+        };
+    }
+}
@@ -0,0 +1,233 @@
+package com.mongs.springazuredemo.file;
+
+import com.mongs.springazuredemo.ResourceNotFoundException;
+import com.mongs.springazuredemo.file.FileBatchService.NamedBlob;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(classes = FileBatchService.class)
+@TestPropertySource(properties = {
+        "app.azure.blob.batch.max-files=20",
+        "app.azure.blob.batch.max-concurrency=4",
+        "app.azure.blob.batch.prefetch-max-size=16B",
+        "app.azure.blob.batch.prefetch-budget=32B"
+})
+class FileBatchServiceTests {
+
+    @Autowired
+    private FileBatchService fileBatchService;
+
+    @MockitoBean
+    private AzureBlobService azureBlobService;
+
+    @MockitoBean
+    private BlobCache blobCache;
+
+    @Test
+    void uploadsRunConcurrentlyUpToTheLimit() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(azureBlobService.uploadImage(any())).thenAnswer(invocation -> {
+            MultipartFile file = invocation.getArgument(0);
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } finally {
+                running.decrementAndGet();
+            }
+            if (file.getOriginalFilename().equals("photo-3.png")) {
+                throw new IllegalArgumentException("File cannot be null or empty");
+            }
+            return "https://account.blob.core.windows.net/images/" + file.getOriginalFilename();
+        });
+        List<MultipartFile> files = IntStream.range(0, 12)
+                .<MultipartFile>mapToObj(i -> new MockMultipartFile("files", "photo-" + i + ".png", "image/png", new byte[]{1}))
+                .toList();
+
+        List<FileBatchItemResult> results = fileBatchService.uploadImages(files);
+
+        assertThat(maxRunning.get()).isEqualTo(4);
+        assertThat(results).extracting(FileBatchItemResult::index).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+        assertThat(results.get(0).url()).isEqualTo("https://account.blob.core.windows.net/images/photo-0.png");
+        assertThat(results.get(3).url()).isNull();
+        assertThat(results.get(3).error()).isEqualTo("File cannot be null or empty");
+    }
+
+    @Test
+    void zipContainsEveryBlobOnceInRequestOrder() throws Exception {
+        Map<String, String> blobs = new LinkedHashMap<>();
+        blobs.put("b.png", "small");
+        // larger than prefetch-max-size, streamed instead of fetched ahead
+        blobs.put("a.svg", "<svg>" + "x".repeat(100) + "</svg>");
+        blobs.put("c.jpg", "also small");
+        when(blobCache.get(anyString())).thenAnswer(invocation -> {
+            String content = blobs.get(invocation.<String>getArgument(0));
+            if (content == null) {
+                throw new ResourceNotFoundException("File not found in Azure Blob Storage:" + invocation.getArgument(0));
+            }
+            return source(content.getBytes(StandardCharsets.US_ASCII));
+        });
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        fileBatchService.writeZip(fileBatchService.resolve(List.of("b.png", "a.svg", "c.jpg", "b.png")), archive);
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.US_ASCII));
+            }
+        }
+        assertThat(entries).containsExactlyEntriesOf(blobs);
+        assertThatThrownBy(() -> fileBatchService.resolve(List.of("b.png", "missing.png")))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void blobsBeyondThePrefetchBudgetAreStreamed() throws Exception {
+        Map<String, String> writtenBy = new ConcurrentHashMap<>();
+        List<NamedBlob> blobs = IntStream.range(0, 4)
+                .mapToObj(i -> new NamedBlob("file-" + i + ".txt", recording("file-" + i + ".txt", writtenBy)))
+                .toList();
+
+        // each run fetches three 10B blobs ahead within the 32B budget, the fourth is streamed
+        for (int run = 0; run < 2; run++) {
+            writtenBy.clear();
+            fileBatchService.writeZip(blobs, new ByteArrayOutputStream());
+
+            assertThat(writtenBy.get("file-0.txt")).startsWith("file-batch-");
+            assertThat(writtenBy.get("file-2.txt")).startsWith("file-batch-");
+            assertThat(writtenBy.get("file-3.txt")).isEqualTo(Thread.currentThread().getName());
+        }
+    }
+
+    @Test
+    void failedDownloadStopsTheFetchesAhead() throws Exception {
+        AtomicInteger chunks = new AtomicInteger();
+        List<NamedBlob> blobs = List.of(
+                new NamedBlob("fast.txt", source("fast".getBytes(StandardCharsets.US_ASCII))),
+                new NamedBlob("slow-1.txt", slow(chunks)),
+                new NamedBlob("slow-2.txt", slow(chunks)));
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThatThrownBy(() -> fileBatchService.writeZip(blobs, disconnected)).isInstanceOf(IOException.class);
+
+        // writing the first entry failed while the second was fetched ahead, it stops at its next chunk
+        Thread.sleep(100);
+        int stopped = chunks.get();
+        Thread.sleep(200);
+        assertThat(chunks.get()).isEqualTo(stopped).isLessThan(16);
+    }
+
+    // 10B of content, remembers the thread that wrote it
+    private static BlobSource recording(String name, Map<String, String> writtenBy) {
+        BlobSource content = source(name.substring(0, 10).getBytes(StandardCharsets.US_ASCII));
+        return new BlobSource() {
+            @Override
+            public long size() {
+                return content.size();
+            }
+
+            @Override
+            public String etag() {
+                return content.etag();
+            }
+
+            @Override
+            public OffsetDateTime lastModified() {
+                return null;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream, long offset, long count) throws IOException {
+                writtenBy.put(name, Thread.currentThread().getName());
+                content.writeTo(outputStream, offset, count);
+            }
+        };
+    }
+
+    // 16B written a byte at a time like a slow download, parking does not clear an interrupt
+    private static BlobSource slow(AtomicInteger chunks) {
+        return new BlobSource() {
+            @Override
+            public long size() {
+                return 16;
+            }
+
+            @Override
+            public String etag() {
+                return "etag";
+            }
+
+            @Override
+            public OffsetDateTime lastModified() {
+                return null;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream, long offset, long count) throws IOException {
+                for (int i = 0; i < count; i++) {
+                    outputStream.write('x');
+                    chunks.incrementAndGet();
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+                }
+            }
+        };
+    }
+
+    private static BlobSource source(byte[] content) {
+        return new BlobSource() {
+            @Override
+            public long size() {
+                return content.length;
+            }
+
+            @Override
+            public String etag() {
+                return "etag";
+            }
+
+            @Override
+            public OffsetDateTime lastModified() {
+                return null;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream, long offset, long count) throws IOException {
+                outputStream.write(content, (int) offset, (int) count);
+            }
+        };
+    }
+}
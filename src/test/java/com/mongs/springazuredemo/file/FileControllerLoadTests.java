@@ -0,0 +1,211 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.storage.blob.models.BlobProperties;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.embedded.EmbeddedWebServerFactoryCustomizerAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Fires more concurrent downloads than Tomcat has worker threads while every blob call
+ * blocks until the test releases it, and counts how many requests reach storage at once.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+        "server.tomcat.threads.max=" + FileControllerLoadTests.MAX_THREADS,
+        "app.azure.blob.cache.enabled=false"
+})
+class FileControllerLoadTests {
+
+    static final int MAX_THREADS = 20;
+    private static final int REQUESTS = 200;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({
+            PropertyPlaceholderAutoConfiguration.class,
+            ServletWebServerFactoryAutoConfiguration.class,
+            EmbeddedWebServerFactoryCustomizerAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class,
+            HttpMessageConvertersAutoConfiguration.class,
+            JacksonAutoConfiguration.class
+    })
+    @Import({FileController.class, BlobCache.class, ImageVariantService.class, FileBatchService.class})
+    static class LoadTestConfiguration {
+    }
+
+    @MockitoBean
+    private AzureBlobService azureBlobService;
+
+    @Nested
+    @TestPropertySource(properties = "spring.threads.virtual.enabled=false")
+    class PlatformThreads {
+
+        // the outer fields belong to the outer context, each nested class starts its own server
+        @Autowired
+        private AzureBlobService azureBlobService;
+
+        @LocalServerPort
+        private int port;
+
+        @Test
+        void concurrencyIsCappedByTheWorkerPool() throws Exception {
+            BlockingStorage storage = new BlockingStorage();
+            storage.stub(azureBlobService);
+
+            List<CompletableFuture<HttpResponse<byte[]>>> responses = fire(port, "/api/files/image.png");
+            storage.awaitWaiting(MAX_THREADS);
+            // the remaining requests stay queued for a worker however long they wait
+            Thread.sleep(200);
+            assertThat(storage.waiting()).isEqualTo(MAX_THREADS);
+
+            storage.releaseAndVerify(responses);
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = "spring.threads.virtual.enabled=true")
+    class VirtualThreads {
+
+        // the outer fields belong to the outer context, each nested class starts its own server
+        @Autowired
+        private AzureBlobService azureBlobService;
+
+        @LocalServerPort
+        private int port;
+
+        @Test
+        void concurrencyIsNotCappedByTheWorkerPool() throws Exception {
+            BlockingStorage storage = new BlockingStorage();
+            storage.stub(azureBlobService);
+
+            List<CompletableFuture<HttpResponse<byte[]>>> responses = fire(port, "/api/files/image.png");
+            storage.awaitWaiting(REQUESTS);
+
+            storage.releaseAndVerify(responses);
+        }
+    }
+
+    @Nested
+    @Import({ReactiveFileRoutes.class, ReactiveFileHandler.class})
+    @TestPropertySource(properties = "spring.threads.virtual.enabled=false")
+    class ReactiveApi {
+
+        // kept out of the shared configuration, @WebMvcTest in this package picks that up too
+        @MockitoBean
+        private ReactiveAzureBlobService reactiveAzureBlobService;
+
+        @LocalServerPort
+        private int port;
+
+        @Test
+        void concurrencyIsNotCappedByTheWorkerPool() throws Exception {
+            // the same wait, but on a future instead of a request thread
+            BlockingStorage storage = new BlockingStorage();
+            when(reactiveAzureBlobService.getProperties(anyString()))
+                    .thenAnswer(invocation -> storage.waitAsync(storage.properties));
+            when(reactiveAzureBlobService.download(anyString(), anyLong(), any()))
+                    .thenAnswer(invocation -> Flux.just(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+
+            List<CompletableFuture<HttpResponse<byte[]>>> responses = fire(port, "/api/reactive/files/image.png");
+            storage.awaitWaiting(REQUESTS);
+
+            storage.releaseAndVerify(responses);
+        }
+    }
+
+    /**
+     * Stands in for Azure Storage. Every properties lookup waits until the test releases it,
+     * so the number of lookups waiting is the number of requests being served at once.
+     */
+    private static class BlockingStorage {
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final CompletableFuture<Void> released = new CompletableFuture<>();
+        private final BlobProperties properties = mock(BlobProperties.class);
+
+        BlockingStorage() {
+            when(properties.getBlobSize()).thenReturn(3L);
+        }
+
+        // the properties lookup runs on the request thread before streaming starts
+        void stub(AzureBlobService azureBlobService) throws Exception {
+            when(azureBlobService.getProperties(anyString())).thenAnswer(invocation -> {
+                waiting.incrementAndGet();
+                released.get(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+                return properties;
+            });
+            doAnswer(invocation -> {
+                invocation.<OutputStream>getArgument(3).write(new byte[]{1, 2, 3});
+                return null;
+            }).when(azureBlobService).download(anyString(), anyLong(), any(), any());
+        }
+
+        <T> Mono<T> waitAsync(T result) {
+            return Mono.defer(() -> {
+                waiting.incrementAndGet();
+                return Mono.fromFuture(released).thenReturn(result);
+            });
+        }
+
+        int waiting() {
+            return waiting.get();
+        }
+
+        void awaitWaiting(int requests) {
+            await().atMost(TIMEOUT).until(() -> waiting.get() >= requests);
+        }
+
+        void releaseAndVerify(List<CompletableFuture<HttpResponse<byte[]>>> responses) throws Exception {
+            released.complete(null);
+            CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).get(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+            assertThat(responses).allSatisfy(response -> assertThat(response.get().statusCode()).isEqualTo(200));
+        }
+    }
+
+    private static List<CompletableFuture<HttpResponse<byte[]>>> fire(int port, String path) {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build();
+        return IntStream.range(0, REQUESTS)
+                .mapToObj(i -> client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()))
+                .toList();
+    }
+}
@@ -0,0 +1,228 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.storage.blob.models.BlobProperties;
+import com.mongs.springazuredemo.GlobalExceptionHandler;
+import com.mongs.springazuredemo.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(FileController.class)
+@Import({BlobCache.class, GlobalExceptionHandler.class})
+@TestPropertySource(properties = "app.azure.blob.cache.enabled=false")
+class FileControllerTests {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final String ETAG = "\"0x8DC0000000000A\"";
+    private static final OffsetDateTime LAST_MODIFIED = OffsetDateTime.of(2024, 5, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private AzureBlobService azureBlobService;
+
+    @MockitoBean
+    private ImageVariantService imageVariantService;
+
+    @MockitoBean
+    private FileBatchService fileBatchService;
+
+    @BeforeEach
+    void setUp() {
+        BlobProperties properties = mock(BlobProperties.class);
+        when(properties.getBlobSize()).thenReturn((long) CONTENT.length);
+        when(properties.getETag()).thenReturn(ETAG);
+        when(properties.getLastModified()).thenReturn(LAST_MODIFIED);
+        when(azureBlobService.getProperties("image.png")).thenReturn(properties);
+        doAnswer(invocation -> {
+            long offset = invocation.getArgument(1);
+            Long count = invocation.getArgument(2);
+            int length = count == null ? CONTENT.length - (int) offset : count.intValue();
+            invocation.<OutputStream>getArgument(3).write(CONTENT, (int) offset, length);
+            return null;
+        }).when(azureBlobService).download(eq("image.png"), anyLong(), any(), any());
+    }
+
+    @Test
+    void fullDownloadIsStreamed() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/files/image.png"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED, LAST_MODIFIED.toInstant().toEpochMilli()))
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void matchingETagIsNotModified() throws Exception {
+        mockMvc.perform(get("/api/files/image.png").header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(content().bytes(new byte[0]));
+
+        verify(azureBlobService, never()).download(any(), anyLong(), any(), any());
+    }
+
+    @Test
+    void unmodifiedSinceIsNotModified() throws Exception {
+        mockMvc.perform(get("/api/files/image.png")
+                        .header(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 01 May 2024 12:00:00 GMT"))
+                .andExpect(status().isNotModified());
+
+        verify(azureBlobService, never()).download(any(), anyLong(), any(), any());
+    }
+
+    @Test
+    void svgIsGzippedWhenAccepted() throws Exception {
+        byte[] svg = "<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes(StandardCharsets.US_ASCII);
+        BlobProperties properties = mock(BlobProperties.class);
+        when(properties.getBlobSize()).thenReturn((long) svg.length);
+        when(properties.getETag()).thenReturn(ETAG);
+        when(azureBlobService.getProperties("logo.svg")).thenReturn(properties);
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(3).write(svg);
+            return null;
+        }).when(azureBlobService).download(eq("logo.svg"), anyLong(), any(), any());
+
+        MvcResult result = mockMvc.perform(get("/api/files/logo.svg").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0x8DC0000000000A-gzip\""));
+        byte[] body = result.getResponse().getContentAsByteArray();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertThat(in.readAllBytes()).isEqualTo(svg);
+        }
+    }
+
+    @Test
+    void rangeReturnsPartialContent() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/files/image.png").header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andExpect(content().string("2345"));
+    }
+
+    @Test
+    void unsatisfiableRangeIsRejected() throws Exception {
+        mockMvc.perform(get("/api/files/image.png").header(HttpHeaders.RANGE, "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void missingBlobIsNotFound() throws Exception {
+        when(azureBlobService.getProperties("missing.png"))
+                .thenThrow(new ResourceNotFoundException("File not found in Azure Blob Storage:missing.png"));
+
+        mockMvc.perform(get("/api/files/missing.png"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void storageFailureIsNotReportedAsNotFound() throws Exception {
+        when(azureBlobService.getProperties("throttled.png")).thenThrow(new RuntimeException("Server busy"));
+
+        mockMvc.perform(get("/api/files/throttled.png"))
+                .andExpect(status().isInternalServerError());
+    }
+
+    @Test
+    void widthServesResizedVariant() throws Exception {
+        BlobSource variant = mock(BlobSource.class);
+        when(variant.size()).thenReturn(3L);
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(0).write(new byte[]{1, 2, 3});
+            return null;
+        }).when(variant).writeTo(any(), eq(0L), eq(3L));
+        when(imageVariantService.resolveFormat("image.png", 120, "jpg")).thenReturn("jpg");
+        when(imageVariantService.getVariant("image.png", 120, "jpg")).thenReturn(variant);
+
+        MvcResult result = mockMvc.perform(get("/api/files/image.png").param("width", "120").param("format", "jpg"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/jpeg"))
+                .andExpect(content().bytes(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    void unsupportedWidthIsBadRequest() throws Exception {
+        when(imageVariantService.resolveFormat("image.png", 121, null))
+                .thenThrow(new IllegalArgumentException("Width must be one of [120, 480]"));
+
+        mockMvc.perform(get("/api/files/image.png").param("width", "121"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void busyVariantGenerationIsServiceUnavailable() throws Exception {
+        when(imageVariantService.resolveFormat("image.png", 120, null)).thenReturn("png");
+        when(imageVariantService.getVariant("image.png", 120, "png"))
+                .thenThrow(new ImageVariantBusyException("Too many image variants are being generated, retry later"));
+
+        mockMvc.perform(get("/api/files/image.png").param("width", "120"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
+    @Test
+    void zipWithMissingFileIsNotFoundBeforeStreaming() throws Exception {
+        when(fileBatchService.resolve(List.of("image.png", "missing.png")))
+                .thenThrow(new ResourceNotFoundException("File not found in Azure Blob Storage:missing.png"));
+
+        mockMvc.perform(get("/api/files/zip").param("names", "image.png", "missing.png"))
+                .andExpect(status().isNotFound())
+                .andExpect(request().asyncNotStarted());
+        verify(fileBatchService, never()).writeZip(any(), any());
+    }
+}
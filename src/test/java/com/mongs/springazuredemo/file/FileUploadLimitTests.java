@@ -0,0 +1,83 @@
+package com.mongs.springazuredemo.file;
+
+import com.mongs.springazuredemo.GlobalExceptionHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Uploads through a real server, MockMvc does not apply the multipart size limits.
+ * The limits are the ones in application.yml.
+ */
+@SpringBootTest(classes = FileControllerLoadTests.LoadTestConfiguration.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "app.azure.blob.cache.enabled=false")
+@ImportAutoConfiguration(MultipartAutoConfiguration.class)
+@Import(GlobalExceptionHandler.class)
+class FileUploadLimitTests {
+
+    private static final String BOUNDARY = "upload-boundary";
+    private static final DataSize MAX_SINGLE_UPLOAD_SIZE = DataSize.ofMegabytes(4);
+    private static final DataSize MAX_FILE_SIZE = DataSize.ofMegabytes(64);
+
+    @MockitoBean
+    private AzureBlobService azureBlobService;
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void fileAboveTheSingleUploadSizeReachesTheBlockUpload() throws Exception {
+        when(azureBlobService.uploadImage(any())).thenAnswer(invocation ->
+                "https://account.blob.core.windows.net/files/" + invocation.<MultipartFile>getArgument(0).getSize());
+
+        HttpResponse<String> response = upload(MAX_SINGLE_UPLOAD_SIZE.toBytes() + 1);
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).contains("/files/" + (MAX_SINGLE_UPLOAD_SIZE.toBytes() + 1));
+    }
+
+    @Test
+    void fileAboveTheMaximumFileSizeIsTooLarge() throws Exception {
+        HttpResponse<String> response = upload(MAX_FILE_SIZE.toBytes() + 1);
+
+        assertThat(response.statusCode()).isEqualTo(413);
+        verify(azureBlobService, never()).uploadImage(any());
+    }
+
+    private HttpResponse<String> upload(long size) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"photo.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        body.writeBytes(new byte[(int) size]);
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/files/upload"))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            return client.send(request, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.mongs.springazuredemo.file;
+
+import com.mongs.springazuredemo.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(classes = ImageVariantService.class)
+@TestPropertySource(properties = {
+        "app.azure.blob.variants.widths=120,480",
+        "app.azure.blob.variants.formats=jpg,png",
+        "app.azure.blob.variants.max-input-size=1MB",
+        "app.azure.blob.variants.max-pixels=1000000",
+        "app.azure.blob.variants.max-concurrent=1",
+        "app.azure.blob.variants.max-wait=100ms"
+})
+class ImageVariantServiceTests {
+
+    private static final int CONCURRENT_REQUESTS = 8;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @MockitoBean
+    private AzureBlobService azureBlobService;
+
+    @MockitoBean
+    private BlobCache blobCache;
+
+    // stands in for the storage account
+    private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        blobs.put("photo.png", png(800, 400));
+        when(azureBlobService.exists(anyString())).thenAnswer(invocation -> blobs.containsKey(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> {
+            // generation is slow enough for concurrent requests to overlap
+            Thread.sleep(200);
+            blobs.put(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(azureBlobService).upload(anyString(), any(), anyString());
+        when(blobCache.get(anyString())).thenAnswer(invocation -> {
+            byte[] content = blobs.get(invocation.<String>getArgument(0));
+            if (content == null) {
+                throw new ResourceNotFoundException("File not found in Azure Blob Storage:" + invocation.getArgument(0));
+            }
+            return source(content);
+        });
+    }
+
+    @Test
+    void concurrentRequestsGenerateTheVariantOnce() throws Exception {
+        List<CompletableFuture<BlobSource>> requests = IntStream.range(0, CONCURRENT_REQUESTS)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> imageVariantService.getVariant("photo.png", 120, "jpg")))
+                .toList();
+
+        for (CompletableFuture<BlobSource> request : requests) {
+            BufferedImage variant = read(request.get());
+            assertThat(variant.getWidth()).isEqualTo(120);
+            assertThat(variant.getHeight()).isEqualTo(60);
+        }
+        verify(azureBlobService, times(1)).upload(eq("variants/120/photo.png.jpg"), any(), eq("image/jpeg"));
+    }
+
+    @Test
+    void uploadsQueueTheConfiguredWidths() {
+        imageVariantService.onUpload(new BlobUploadedEvent("photo.png", "image/png"));
+
+        verify(azureBlobService, timeout(5_000)).upload(eq("variants/120/photo.png.png"), any(), eq("image/png"));
+        verify(azureBlobService, timeout(5_000)).upload(eq("variants/480/photo.png.png"), any(), eq("image/png"));
+    }
+
+    @Test
+    void oversizedOriginalsAreNotDecoded() throws Exception {
+        // compresses to a few KB but would decode to 2M pixels
+        blobs.put("wide.png", png(2000, 1000));
+        blobs.put("large.png", new byte[2 << 20]);
+
+        assertThatThrownBy(() -> imageVariantService.getVariant("wide.png", 120, "jpg"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("too many pixels");
+        assertThatThrownBy(() -> imageVariantService.getVariant("large.png", 120, "jpg"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("too large");
+        verify(azureBlobService, times(0)).upload(anyString(), any(), anyString());
+    }
+
+    @Test
+    void onDemandGenerationIsRejectedWhileAllSlotsAreBusy() throws Exception {
+        CountDownLatch decoding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        blobs.put("slow.png", png(800, 400));
+        when(blobCache.get("slow.png")).thenAnswer(invocation -> {
+            decoding.countDown();
+            release.await();
+            return source(blobs.get("slow.png"));
+        });
+        CompletableFuture<BlobSource> slow = CompletableFuture.supplyAsync(() -> imageVariantService.getVariant("slow.png", 120, "jpg"));
+        assertThat(decoding.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> imageVariantService.getVariant("photo.png", 480, "png"))
+                .isInstanceOf(ImageVariantBusyException.class);
+
+        release.countDown();
+        assertThat(read(slow.get(5, TimeUnit.SECONDS)).getWidth()).isEqualTo(120);
+        assertThat(read(imageVariantService.getVariant("photo.png", 480, "png")).getWidth()).isEqualTo(480);
+    }
+
+    @Test
+    void unsupportedSizesAreRejected() {
+        assertThat(imageVariantService.resolveFormat("photo.jpeg", 120, null)).isEqualTo("jpg");
+        assertThat(imageVariantService.resolveFormat("photo.webp", 120, null)).isEqualTo("jpg");
+        assertThatThrownBy(() -> imageVariantService.resolveFormat("photo.png", 121, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> imageVariantService.resolveFormat("photo.png", 120, "tiff"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] png(int width, int height) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage read(BlobSource blob) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        blob.writeTo(out, 0, blob.size());
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static BlobSource source(byte[] content) {
+        return new BlobSource() {
+            @Override
+            public long size() {
+                return content.length;
+            }
+
+            @Override
+            public String etag() {
+                return "etag";
+            }
+
+            @Override
+            public OffsetDateTime lastModified() {
+                return null;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream, long offset, long count) throws IOException {
+                outputStream.write(content, (int) offset, (int) count);
+            }
+        };
+    }
+}
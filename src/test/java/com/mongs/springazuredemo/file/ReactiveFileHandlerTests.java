@@ -0,0 +1,173 @@
+package com.mongs.springazuredemo.file;
+
+import com.azure.storage.blob.models.BlobProperties;
+import com.mongs.springazuredemo.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(classes = {ReactiveFileHandler.class, ReactiveFileRoutes.class},
+        properties = "spring.servlet.multipart.max-file-size=8B")
+class ReactiveFileHandlerTests {
+
+    private static final String ETAG = "\"0x8DC0FFEE\"";
+
+    @Autowired
+    private RouterFunction<ServerResponse> reactiveFileRouter;
+
+    @MockitoBean
+    private ReactiveAzureBlobService reactiveAzureBlobService;
+
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = WebTestClient.bindToRouterFunction(reactiveFileRouter).build();
+        BlobProperties properties = mock(BlobProperties.class);
+        when(properties.getBlobSize()).thenReturn(10L);
+        when(properties.getETag()).thenReturn(ETAG);
+        when(properties.getLastModified()).thenReturn(OffsetDateTime.of(2024, 5, 1, 12, 0, 0, 0, ZoneOffset.UTC));
+        when(reactiveAzureBlobService.getProperties(anyString()))
+                .thenReturn(Mono.error(new ResourceNotFoundException("File not found in Azure Blob Storage:missing.png")));
+        when(reactiveAzureBlobService.getProperties("image.png")).thenReturn(Mono.just(properties));
+        when(reactiveAzureBlobService.download(eq("image.png"), anyLong(), any()))
+                .thenAnswer(invocation -> {
+                    long offset = invocation.getArgument(1);
+                    Long count = invocation.getArgument(2);
+                    byte[] content = "0123456789".getBytes(StandardCharsets.US_ASCII);
+                    int length = count == null ? content.length - (int) offset : count.intValue();
+                    return Flux.just(ByteBuffer.wrap(content, (int) offset, length));
+                });
+    }
+
+    @Test
+    void uploadStreamsTheFilePartToStorage() {
+        when(reactiveAzureBlobService.uploadImage(eq("logo.png"), eq("image/png"), any()))
+                .thenAnswer(invocation -> invocation.<Flux<ByteBuffer>>getArgument(2)
+                        .map(ByteBuffer::remaining)
+                        .reduce(0, Integer::sum)
+                        .map(size -> "https://account.blob.core.windows.net/images/" + size + ".png"));
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("description", "company logo");
+        body.part("file", "logo".getBytes(StandardCharsets.US_ASCII))
+                .filename("logo.png")
+                .contentType(MediaType.IMAGE_PNG);
+
+        client.post().uri("/upload")
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.url").isEqualTo("https://account.blob.core.windows.net/images/4.png")
+                .jsonPath("$.message").isEqualTo("Image uploaded successfully");
+    }
+
+    @Test
+    void uploadWithoutFileIsAnError() {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("description", "nothing attached");
+
+        client.post().uri("/upload")
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.error").isEqualTo("File cannot be null or empty");
+        verify(reactiveAzureBlobService, never()).uploadImage(any(), any(), any());
+    }
+
+    @Test
+    void uploadPastTheMaximumFileSizeIsTooLarge() {
+        when(reactiveAzureBlobService.uploadImage(eq("logo.png"), eq("image/png"), any()))
+                .thenAnswer(invocation -> invocation.<Flux<ByteBuffer>>getArgument(2).then(Mono.just("url")));
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("file", "larger than eight bytes".getBytes(StandardCharsets.US_ASCII))
+                .filename("logo.png")
+                .contentType(MediaType.IMAGE_PNG);
+
+        client.post().uri("/upload")
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @Test
+    void downloadStreamsTheWholeBlob() {
+        client.get().uri("/image.png")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.IMAGE_PNG)
+                .expectHeader().contentLength(10)
+                .expectHeader().valueEquals(HttpHeaders.ETAG, ETAG)
+                .expectHeader().valueEquals(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable")
+                .expectBody(String.class).isEqualTo("0123456789");
+    }
+
+    @Test
+    void rangeRequestsGetPartialContent() {
+        client.get().uri("/image.png")
+                .header(HttpHeaders.RANGE, "bytes=2-5")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10")
+                .expectBody(String.class).isEqualTo("2345");
+
+        client.get().uri("/image.png")
+                .header(HttpHeaders.RANGE, "bytes=20-")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes */10");
+    }
+
+    @Test
+    void matchingETagIsNotModified() {
+        client.get().uri("/image.png")
+                .header(HttpHeaders.IF_NONE_MATCH, ETAG)
+                .exchange()
+                .expectStatus().isNotModified();
+        verify(reactiveAzureBlobService, never()).download(anyString(), anyLong(), any());
+    }
+
+    @Test
+    void missingBlobsAndForeignUrlsAreNotFound() {
+        when(reactiveAzureBlobService.getBlobNameFromUrl(anyString()))
+                .thenThrow(new IllegalArgumentException("File URL is not valid"));
+
+        client.get().uri("/missing.png").exchange().expectStatus().isNotFound();
+        client.get().uri("/by-url?url=https://elsewhere.example/images/image.png").exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    void storageFailuresAreNotReportedAsNotFound() {
+        when(reactiveAzureBlobService.getProperties("broken.png"))
+                .thenReturn(Mono.error(new IllegalStateException("Storage unavailable")));
+
+        client.get().uri("/broken.png").exchange().expectStatus().is5xxServerError();
+    }
+}